@@ -0,0 +1,137 @@
+/**
+* AnalysisCache.java
+* A cache of board analyses, keyed by the board's Zobrist hash and bounded by
+* the memory its entries use rather than by their number. When the cache is
+* full the least recently used analyses are evicted. Each entry keeps a copy of
+* its board so a hash collision can never return the wrong analysis; a board
+* too large to fit is simply not cached.
+*
+* The cache may be shared by several games of the same size (e.g. the copies
+* made by the solver's threads), so, like the TranspositionTable, it is split
+* into stripes that each have their own lock and their own share of the memory.
+*/
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class AnalysisCache {
+	private final int ENTRY_OVERHEAD = 64;		// estimated bytes used by an entry besides its board and moves
+	private final int ROW_OVERHEAD = 16;		// estimated bytes used by an array besides its elements
+	private final int MOVE_SIZE = ROW_OVERHEAD + 4 * 4 + 8;	// estimated bytes used by one move and its list slot
+
+	/**
+	* One independently locked part of the cache.
+	*/
+	private static class Stripe {
+		final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+		long bytes;
+		long hits;
+		long misses;
+	}
+
+	private static class Entry {
+		final int[][] board;
+		final BoardAnalysis analysis;
+		final long bytes;
+
+		Entry(int[][] board, BoardAnalysis analysis, long bytes) {
+			this.board = board;
+			this.analysis = analysis;
+			this.bytes = bytes;
+		}
+	}
+
+	private final Stripe[] stripes;
+	private final long maxBytesPerStripe;
+
+	public AnalysisCache(int numStripes, long maxBytes) {
+		// round up to a power of two so a stripe can be picked with a mask
+		int size = Integer.highestOneBit(Math.max(1, numStripes - 1)) << 1;
+		stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe();
+		}
+		maxBytesPerStripe = Math.max(1, maxBytes / size);
+	}
+
+	/**
+	* get
+	* Returns the cached analysis of the given board, or null if there is none.
+	*/
+	public BoardAnalysis get(long hash, int[][] board) {
+		Stripe stripe = stripeFor(hash);
+		synchronized (stripe) {
+			Entry entry = stripe.entries.get(hash);
+			if (entry == null || !Arrays.deepEquals(entry.board, board)) {
+				stripe.misses++;
+				return null;
+			}
+			stripe.hits++;
+			return entry.analysis;
+		}
+	}
+
+	/**
+	* put
+	* Caches the analysis of the given board, evicting the least recently used
+	* analyses until it fits. The board is copied, unless it is too large for
+	* the cache, in which case nothing is cached.
+	*/
+	public void put(long hash, int[][] board, BoardAnalysis analysis) {
+		long bytes = sizeOf(board, analysis);
+		if (bytes > maxBytesPerStripe) {
+			return;
+		}
+		int[][] boardCopy = new int[board.length][];
+		for (int row = 0; row < board.length; row++) {
+			boardCopy[row] = board[row].clone();
+		}
+		Stripe stripe = stripeFor(hash);
+		synchronized (stripe) {
+			Entry replaced = stripe.entries.put(hash, new Entry(boardCopy, analysis, bytes));
+			stripe.bytes += bytes - (replaced == null ? 0 : replaced.bytes);
+			Iterator<Entry> eldest = stripe.entries.values().iterator();
+			while (stripe.bytes > maxBytesPerStripe) {
+				stripe.bytes -= eldest.next().bytes;
+				eldest.remove();
+			}
+		}
+	}
+
+	public long getHits() {
+		long hits = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				hits += stripe.hits;
+			}
+		}
+		return hits;
+	}
+
+	public long getMisses() {
+		long misses = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				misses += stripe.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	* sizeOf
+	* Estimates the bytes an entry for the given board and analysis keeps alive.
+	*/
+	private long sizeOf(int[][] board, BoardAnalysis analysis) {
+		long boardBytes = ROW_OVERHEAD + 8L * board.length;
+		for (int[] row : board) {
+			boardBytes += ROW_OVERHEAD + 4L * row.length;
+		}
+		return ENTRY_OVERHEAD + boardBytes + (long) MOVE_SIZE * analysis.getNumValidMoves();
+	}
+
+	private Stripe stripeFor(long hash) {
+		return stripes[(int)(hash ^ (hash >>> 32)) & (stripes.length - 1)];
+	}
+}
@@ -0,0 +1,313 @@
+/**
+* AnimatedBoardPanel.java
+* The play panel of BejeweledGUI when animation is on. The slot labels stay on
+* top of the panel for the highlight borders and the mouse, but have no icons;
+* the panel draws the pieces underneath them instead, so a piece can be drawn
+* between two slots while it moves.
+*
+* The game changes the board at once, as before, and never waits for the
+* animation. The panel only remembers how far each piece is drawn from its
+* slot (showSwap and showFall set that up) and a Swing timer moves the pieces
+* back a little every frame, while there is anything left to move. Removed
+* pieces fade out where they were.
+*
+* Each piece is drawn from a sprite kept in a VolatileImage, and each frame is
+* drawn into a VolatileImage back buffer before it is copied to the screen. The
+* time between frames is recorded in a LatencyHistogram. To keep up when chain
+* reactions pile up, pieces are never drawn more than MAX_BEHIND slots away from
+* where they belong, and if a frame took longer than FRAME_INTERVAL to draw,
+* everything still moving jumps straight to its slot.
+*/
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.VolatileImage;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+public class AnimatedBoardPanel extends JPanel implements ActionListener {
+	private static final long serialVersionUID = 1L;
+
+	private final int FRAME_INTERVAL = 16;		// milliseconds between frames
+	private final double FALL_SPEED = 15;		// slots a piece falls per second
+	private final double SWAP_SPEED = 6;		// slots a swapped piece moves per second
+	private final double FADE_TIME = 250;		// milliseconds a removed piece takes to fade out
+	private final int MAX_BEHIND = 4;			// slots a piece may be drawn away from its own
+	private final int NONE = -1;
+
+	private final int numRow, numCol;
+	private final Image[] pieceImages;
+	private final VolatileImage[] sprites;
+	private VolatileImage backBuffer;
+	private final Color background;
+
+	private final int[][] pieces;			// the piece each slot shows, or NONE
+	private final double[][] offsetX;		// how far (in slots) each piece is drawn from its slot
+	private final double[][] offsetY;
+	private final double[][] speed;			// slots per second the piece moves back to its slot
+	private final int[][] fadingPieces;		// the piece fading out on each slot, or NONE
+	private final double[][] fade;			// how visible that piece still is, from 1 down to 0
+
+	private final Timer timer;
+	private final LatencyHistogram frameTimes;
+	private long lastFrameNanos;			// when the last frame (or the animation) was started
+	private long lastPaintNanos;			// how long the last frame took to draw
+
+	public AnimatedBoardPanel(int numRow, int numCol, Image[] pieceImages, Color background) {
+		this.numRow = numRow;
+		this.numCol = numCol;
+		this.pieceImages = pieceImages;
+		this.background = background;
+		sprites = new VolatileImage[pieceImages.length];
+		pieces = new int[numRow][numCol];
+		offsetX = new double[numRow][numCol];
+		offsetY = new double[numRow][numCol];
+		speed = new double[numRow][numCol];
+		fadingPieces = new int[numRow][numCol];
+		fade = new double[numRow][numCol];
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				pieces[row][col] = NONE;
+				fadingPieces[row][col] = NONE;
+			}
+		}
+		timer = new Timer(FRAME_INTERVAL, this);
+		frameTimes = new LatencyHistogram();
+		setBackground(background);
+	}
+
+	/**
+	* Returns the times between animation frames measured so far.
+	*/
+	public LatencyHistogram getFrameTimes() {
+		return frameTimes;
+	}
+
+	public void setPiece(int row, int col, int piece) {
+		pieces[row][col] = piece;
+		repaint();
+	}
+
+	/**
+	* showSwap
+	* The two pieces trade places: each one is now drawn where the other one
+	* was and moves to its new slot.
+	*/
+	public void showSwap(int row1, int col1, int row2, int col2) {
+		int piece = pieces[row1][col1];
+		double x = offsetX[row1][col1];
+		double y = offsetY[row1][col1];
+		pieces[row1][col1] = pieces[row2][col2];
+		offsetX[row1][col1] = offsetX[row2][col2] + col2 - col1;
+		offsetY[row1][col1] = offsetY[row2][col2] + row2 - row1;
+		speed[row1][col1] = SWAP_SPEED;
+		pieces[row2][col2] = piece;
+		offsetX[row2][col2] = x + col1 - col2;
+		offsetY[row2][col2] = y + row1 - row2;
+		speed[row2][col2] = SWAP_SPEED;
+		startAnimation();
+	}
+
+	/**
+	* showFall
+	* The piece on the slot fades out and every piece above it moves down one
+	* slot, still drawn where it was. The piece that will be put on the top
+	* slot is drawn one slot above the piece that was there.
+	*/
+	public void showFall(int row, int col) {
+		if (pieces[row][col] != NONE) {
+			fadingPieces[row][col] = pieces[row][col];
+			fade[row][col] = 1;
+		}
+		for (int i = row; i > 0; i--) {
+			pieces[i][col] = pieces[i - 1][col];
+			offsetX[i][col] = offsetX[i - 1][col];
+			offsetY[i][col] = offsetY[i - 1][col] - 1;
+			speed[i][col] = FALL_SPEED;
+		}
+		pieces[0][col] = NONE;
+		offsetX[0][col] = 0;
+		offsetY[0][col] = Math.min(offsetY[0][col], 0) - 1;
+		speed[0][col] = FALL_SPEED;
+		startAnimation();
+	}
+
+	/**
+	* clear
+	* Removes all pieces and stops any animation.
+	*/
+	public void clear() {
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				pieces[row][col] = NONE;
+				fadingPieces[row][col] = NONE;
+				offsetX[row][col] = 0;
+				offsetY[row][col] = 0;
+			}
+		}
+		stopAnimation();
+		repaint();
+	}
+
+	/**
+	* actionPerformed
+	* Called by the timer for every frame: moves the pieces and fades the
+	* removed ones by the time since the last frame, and stops the timer once
+	* nothing is left to animate.
+	*/
+	public void actionPerformed(ActionEvent event) {
+		long now = System.nanoTime();
+		double seconds = (now - lastFrameNanos) / 1e9;
+		frameTimes.record(now - lastFrameNanos);
+		lastFrameNanos = now;
+
+		// when the pieces fall behind, all of them are moved closer to their
+		// slots by the same factor, which keeps falling pieces apart
+		double behind = 0;
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				behind = Math.max(behind, Math.hypot(offsetX[row][col], offsetY[row][col]));
+			}
+		}
+		double scale = behind > MAX_BEHIND ? MAX_BEHIND / behind : 1;
+		boolean skip = lastPaintNanos > FRAME_INTERVAL * 1000000L;
+		boolean moving = false;
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				if (fadingPieces[row][col] != NONE) {
+					fade[row][col] -= seconds * 1000 / FADE_TIME;
+					if (skip || fade[row][col] <= 0) {
+						fadingPieces[row][col] = NONE;
+					} else {
+						moving = true;
+					}
+				}
+				double x = offsetX[row][col];
+				double y = offsetY[row][col];
+				if (x == 0 && y == 0) {
+					continue;
+				}
+				double distance = Math.hypot(x, y);
+				double left = distance * scale - speed[row][col] * seconds;
+				if (skip || left <= 0) {
+					offsetX[row][col] = 0;
+					offsetY[row][col] = 0;
+				} else {
+					offsetX[row][col] = x * left / distance;
+					offsetY[row][col] = y * left / distance;
+					moving = true;
+				}
+			}
+		}
+		if (!moving) {
+			stopAnimation();
+		}
+		repaint();
+	}
+
+	private void startAnimation() {
+		if (!timer.isRunning()) {
+			lastFrameNanos = System.nanoTime();
+			timer.start();
+		}
+	}
+
+	private void stopAnimation() {
+		timer.stop();
+	}
+
+	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		GraphicsConfiguration configuration = getGraphicsConfiguration();
+		if (configuration == null) {
+			super.paintComponent(g);
+			return;
+		}
+		do {
+			if (backBuffer == null || backBuffer.getWidth() != getWidth() || backBuffer.getHeight() != getHeight()
+					|| backBuffer.validate(configuration) == VolatileImage.IMAGE_INCOMPATIBLE) {
+				backBuffer = configuration.createCompatibleVolatileImage(getWidth(), getHeight());
+			}
+			Graphics2D buffer = backBuffer.createGraphics();
+			try {
+				drawFrame(buffer, configuration);
+			} finally {
+				buffer.dispose();
+			}
+		} while (backBuffer.contentsLost());
+		g.drawImage(backBuffer, 0, 0, null);
+		lastPaintNanos = System.nanoTime() - start;
+	}
+
+	/**
+	* drawFrame
+	* Draws the background, the pieces fading out and then the pieces, each
+	* centred on its slot label and moved by its offset.
+	*/
+	private void drawFrame(Graphics2D g, GraphicsConfiguration configuration) {
+		g.setColor(background);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		Composite opaque = g.getComposite();
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				if (fadingPieces[row][col] != NONE) {
+					g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) Math.max(0, fade[row][col])));
+					drawPiece(g, configuration, fadingPieces[row][col], row, col, 0, 0);
+				}
+			}
+		}
+		g.setComposite(opaque);
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				if (pieces[row][col] != NONE) {
+					drawPiece(g, configuration, pieces[row][col], row, col, offsetX[row][col], offsetY[row][col]);
+				}
+			}
+		}
+	}
+
+	private void drawPiece(Graphics2D g, GraphicsConfiguration configuration, int piece, int row, int col, double x, double y) {
+		Component slot = getComponent(row * numCol + col);
+		VolatileImage sprite = getSprite(configuration, piece);
+		int left = slot.getX() + (int) Math.round(x * slot.getWidth()) + (slot.getWidth() - sprite.getWidth()) / 2;
+		int top = slot.getY() + (int) Math.round(y * slot.getHeight()) + (slot.getHeight() - sprite.getHeight()) / 2;
+		g.drawImage(sprite, left, top, null);
+	}
+
+	/**
+	* getSprite
+	* Returns the accelerated image of the given piece, drawing it again if
+	* its contents were lost (e.g. when the screen mode changed).
+	*/
+	private VolatileImage getSprite(GraphicsConfiguration configuration, int piece) {
+		VolatileImage sprite = sprites[piece];
+		int state = sprite == null ? VolatileImage.IMAGE_INCOMPATIBLE : sprite.validate(configuration);
+		if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+			Image image = pieceImages[piece];
+			int width = Math.max(1, image.getWidth(null));
+			int height = Math.max(1, image.getHeight(null));
+			sprite = configuration.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+			sprites[piece] = sprite;
+		}
+		if (state != VolatileImage.IMAGE_OK) {
+			do {
+				Graphics2D g = sprite.createGraphics();
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(0, 0, sprite.getWidth(), sprite.getHeight());
+				g.setComposite(AlphaComposite.SrcOver);
+				g.drawImage(pieceImages[piece], 0, 0, null);
+				g.dispose();
+			} while (sprite.contentsLost() && sprite.validate(configuration) != VolatileImage.IMAGE_INCOMPATIBLE);
+		}
+		return sprite;
+	}
+}
@@ -11,6 +11,9 @@
 */
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Bejeweled {
 	final Color SELECT_COLOUR = Color.GRAY;
@@ -20,14 +23,31 @@ public class Bejeweled {
 	final int MIN_CHAIN_LENGTH = 3;		// minimum size required to form a chain
 	final int NUMMOVE = 20;				// number of moves to be play in one game
 	final int EMPTY = -1;				// represents a slot on the game board where a piece has disappeared
+	final int ANALYSIS_CACHE_BYTES = 16 << 20;	// memory the remembered board analyses may use
+	final int ANALYSIS_CACHE_STRIPES = 64;		// number of independently locked parts of the analysis cache
+	final int BALANCE_ROWS = 3;					// number of top rows looked at when balancing the pieces
 
 	final int NUMPIECESTYLE;	// number of different piece styles
 	final int NUMROW;			// number of rows in the game board
 	final int NUMCOL;			// number of columns in the game board
 
-	BejeweledGUI gui;			// the object referring to the GUI; used when calling methods to update the GUI
+	BejeweledDisplay gui;		// the object referring to the GUI; used when calling methods to update the GUI
+	RefillSequence refill;		// supplies the random bits used to pick the pieces that fall in from the top
+	volatile PieceDistribution distribution;	// how likely each piece style is to be picked
+	PieceDistribution levelDistribution;		// the distribution the game was set up with, before balancing
+	double balanceStrength;		// how much pieces common in the top rows are held back; 0 for not at all
 
 	int board[][];				// the 2D array representing the current content of the game board
+	ZobristKeys keys;			// keys used to hash the board
+	long boardHash;				// Zobrist hash of the board, updated whenever a slot changes
+	AnalysisCache analysisCache;	// analyses of recently seen boards
+	ChainScanner scanner;		// quickly checks the whole board for chains and possible moves
+	int[][] chainMarks;			// slots the scanner found in chains, allocated when first needed
+	int[][] moveMarks;			// swaps the scanner found to form chains, allocated when first needed
+	CascadeResolver resolver;	// removes chains and refills the board in parallel, or null to do it here
+	boolean[][] chainMask;		// slots marked by the resolver, allocated when it first needs it
+	int[] cascadeRows;			// lowest row in each column changed by the resolver's last pass
+	long cascadeHash;			// board hash after that pass; cascadeRows is out of date once it differs
 
 	boolean firstSelection;		// boolean indicating whether the player is about to select the first piece
 	int slot1Row, slot1Col;		// stores the location of the first selection
@@ -35,14 +55,52 @@ public class Bejeweled {
 	int totalChainLength;		// total length of the current chain
 	int score;					// current score of the game
 	int numMoveLeft;			// number of move left for the game
+	int numPiecesCleared;		// number of pieces removed from the board so far
 	boolean findingValidMove;
 
 	public Bejeweled(BejeweledGUI gui) {
+		this(gui, gui.NUMROW, gui.NUMCOL, gui.NUMPIECESTYLE, new RefillSequence());
+	}
+
+	/**
+	* Creates a game of the given size that shows itself on the given display.
+	* Games created with the same size and an equally seeded refill sequence
+	* start with the same board and get the same refills.
+	*/
+	public Bejeweled(BejeweledDisplay gui, int numRow, int numCol, int numPieceStyle, RefillSequence refill) {
+		this(gui, numRow, numCol, numPieceStyle, refill, null);
+	}
+
+	/**
+	* Creates a game like the constructor above whose cascades, including the
+	* one that removes the chains from the first board, are resolved by the
+	* given resolver. Used for very large boards.
+	*/
+	public Bejeweled(BejeweledDisplay gui, int numRow, int numCol, int numPieceStyle, RefillSequence refill, CascadeResolver resolver) {
+		this(gui, numRow, numCol, numPieceStyle, refill, resolver, PieceDistribution.uniform(numPieceStyle));
+	}
+
+	/**
+	* Creates a game like the constructor above whose pieces, including those
+	* of the first board, are picked with the given distribution.
+	*/
+	public Bejeweled(BejeweledDisplay gui, int numRow, int numCol, int numPieceStyle, RefillSequence refill, CascadeResolver resolver, PieceDistribution distribution) {
+		if (distribution.getNumPieceStyle() != numPieceStyle) {
+			throw new IllegalArgumentException("Expected a distribution over " + numPieceStyle + " piece styles.");
+		}
 		this.gui = gui;
-		NUMPIECESTYLE = gui.NUMPIECESTYLE;
-		NUMROW = gui.NUMROW;
-		NUMCOL = gui.NUMCOL;
+		this.refill = refill;
+		this.distribution = distribution;
+		levelDistribution = distribution;
+		NUMPIECESTYLE = numPieceStyle;
+		NUMROW = numRow;
+		NUMCOL = numCol;
 		board = new int[NUMROW][NUMCOL];
+		keys = new ZobristKeys(NUMCOL);
+		boardHash = keys.hash(board);
+		analysisCache = new AnalysisCache(ANALYSIS_CACHE_STRIPES, ANALYSIS_CACHE_BYTES);
+		scanner = ChainScanner.create(NUMCOL);
+		this.resolver = resolver;
 
 		score = 0;
 		numMoveLeft = NUMMOVE;
@@ -52,6 +110,135 @@ public class Bejeweled {
 		findingValidMove = false;
 		initializeBoard();
 		removeExistingChains(false);
+		numPiecesCleared = 0;
+	}
+
+	/**
+	* Creates a headless copy of the given game that gets its refills from the
+	* given sequence. The copy shares the analysis cache, but is otherwise
+	* independent of the original.
+	*/
+	private Bejeweled(Bejeweled other, RefillSequence refill) {
+		gui = new HeadlessDisplay();
+		this.refill = refill;
+		distribution = other.distribution;
+		levelDistribution = other.levelDistribution;
+		balanceStrength = other.balanceStrength;
+		NUMPIECESTYLE = other.NUMPIECESTYLE;
+		NUMROW = other.NUMROW;
+		NUMCOL = other.NUMCOL;
+		board = other.copyBoard();
+		keys = other.keys;
+		boardHash = other.boardHash;
+		analysisCache = other.analysisCache;
+		scanner = other.scanner;
+		resolver = other.resolver;
+
+		score = other.score;
+		numMoveLeft = other.numMoveLeft;
+		numPiecesCleared = other.numPiecesCleared;
+		totalChainLength = 0;
+		firstSelection = true;
+		findingValidMove = false;
+	}
+
+	/**
+	* copy
+	* Returns a copy of this game that can be played without affecting this one
+	* or its display.
+	*/
+	public Bejeweled copy() {
+		return new Bejeweled(this, refill.copy());
+	}
+
+	/**
+	* copy
+	* Returns a copy of this game whose refills come from the given sequence
+	* instead of continuing this game's.
+	*/
+	public Bejeweled copy(RefillSequence refill) {
+		return new Bejeweled(this, refill);
+	}
+
+	/**
+	* getView
+	* Returns a read-only view of this game, for bots.
+	*/
+	public BoardView getView() {
+		return new BoardView() {
+			public int getNumRow() {
+				return NUMROW;
+			}
+
+			public int getNumCol() {
+				return NUMCOL;
+			}
+
+			public int getNumPieceStyle() {
+				return NUMPIECESTYLE;
+			}
+
+			public int getPiece(int row, int col) {
+				return board[row][col];
+			}
+
+			public int getScore() {
+				return score;
+			}
+
+			public int getMovesLeft() {
+				return numMoveLeft;
+			}
+
+			public BoardAnalysis analyze() {
+				return analyzeBoard();
+			}
+
+			public BoardView simulate(long seed, int row1, int col1, int row2, int col2) {
+				Bejeweled simulation = copy(new RefillSequence(seed));
+				simulation.swap(row1, col1, row2, col2);
+				return simulation.getView();
+			}
+		};
+	}
+
+	/**
+	* setPieceDistribution
+	* Changes how likely each piece style is to be picked from now on. Can be
+	* called at any time, also from another thread. If the game balances its
+	* pieces, the balancing starts from this distribution from now on.
+	*/
+	public void setPieceDistribution (PieceDistribution distribution) {
+		if (distribution.getNumPieceStyle() != NUMPIECESTYLE) {
+			throw new IllegalArgumentException("Expected a distribution over " + NUMPIECESTYLE + " piece styles.");
+		}
+		levelDistribution = distribution;
+		this.distribution = distribution;
+	}
+
+	/**
+	* setBalancing
+	* Makes the game hold back pieces that are already common in the top rows
+	* of the board, looked at once per move, when the swap has removed its
+	* chains and before the board is refilled (see PieceDistribution.balancing).
+	* The whole cascade that follows uses that distribution, so the tables are
+	* built once per move and never during a cascade. strength 0 turns it
+	* off. Must be called on the thread the game is played on.
+	*/
+	public void setBalancing (double strength) {
+		balanceStrength = strength;
+		distribution = levelDistribution;
+	}
+
+	/**
+	* rebalance
+	* Adapts the distribution to the top rows of the board, if the game
+	* balances its pieces. Called once per move, before its cascade.
+	*/
+	private void rebalance () {
+		if (balanceStrength > 0) {
+			distribution = PieceDistribution.balancing(board, levelDistribution, BALANCE_ROWS, balanceStrength);
+		}
 	}
 
 	/**
@@ -59,10 +246,12 @@ public class Bejeweled {
 	* This method fills the game board with random pieces.
 	*/
 	public void initializeBoard () {
+		PieceDistribution pieces = distribution;
 		for (int row = 0; row < NUMROW; row++) {
 			for (int col = 0; col < NUMCOL; col++) {
-				int pieceIndex = (int)(Math.random() * NUMPIECESTYLE);
-				board[row][col] = pieceIndex;
+				long bits = refill.nextBits(col);
+				int pieceIndex = row < 2 ? pieces.sample(bits) : pieces.sample(bits, board[row-1][col], board[row-2][col]);
+				setSlot(row, col, pieceIndex);
 				gui.setPiece(row, col, pieceIndex);
 			}
 		}
@@ -87,21 +276,7 @@ public class Bejeweled {
 			if (!checkAdjacentPieces(row, column)) {
 				gui.showInvalidMoveMessage();
 			} else {
-				swapWithFirstSelection(row, column, true);
-
-				if (checkChainFormation(row, column)) {
-					score += totalChainLength;
-					gui.showChainSizeMessage(totalChainLength);
-					gui.setScore(score);
-					numMoveLeft--;
-					gui.setMoveLeft(numMoveLeft);
-					fillEmptySlots();
-					removeExistingChains(true);
-					totalChainLength = 0;
-				} else {
-					gui.showInvalidSwapMessage();
-					swapWithFirstSelection(row, column, true);
-				}
+				trySwap(row, column);
 			}
 			firstSelection = true;
 			if (numMoveLeft <= 0) {
@@ -113,6 +288,108 @@ public class Bejeweled {
 		}
 	}
 
+	/**
+	* playSwap
+	* This method is called when the player drags a piece onto one of its
+	* neighbours. It has the same effect as clicking on both pieces; a piece
+	* that was selected before is unselected first.
+	*/
+	public void playSwap (int row1, int col1, int row2, int col2) {
+		if (!firstSelection) {
+			gui.unhighlightSlot(slot1Row, slot1Col);
+			firstSelection = true;
+		}
+		play(row1, col1);
+		play(row2, col2);
+	}
+
+	/**
+	* swap
+	* Swaps the two indicated pieces as if the player had clicked on both of them,
+	* without checking whether the game is over afterwards. Returns true if the
+	* pieces were adjacent and the swap formed a chain, in which case the move is
+	* counted. Otherwise the board is left unchanged and false is returned.
+	*/
+	public boolean swap (int row1, int col1, int row2, int col2) {
+		if (!isOnBoard(row1, col1) || !isOnBoard(row2, col2)) {
+			return false;
+		}
+		slot1Row = row1;
+		slot1Col = col1;
+		if (!checkAdjacentPieces(row2, col2)) {
+			return false;
+		}
+		return trySwap(row2, col2);
+	}
+
+	/**
+	* swapWithoutCascade
+	* Like swap, but only removes the chains formed by the swap itself and does
+	* not count the move. The removed pieces are left EMPTY; the caller refills
+	* them with fillColumn and removes the chains that follow with clearChains,
+	* at its own pace.
+	*/
+	public boolean swapWithoutCascade (int row1, int col1, int row2, int col2) {
+		if (!isOnBoard(row1, col1) || !isOnBoard(row2, col2)) {
+			return false;
+		}
+		slot1Row = row1;
+		slot1Col = col1;
+		if (!checkAdjacentPieces(row2, col2)) {
+			return false;
+		}
+		boolean chainFormed = swapAndClear(row2, col2);
+		totalChainLength = 0;
+		return chainFormed;
+	}
+
+	/**
+	* trySwap
+	* This method swaps the indicated piece with the first piece selected. If a
+	* chain is formed, the move is counted and the board is refilled. Otherwise
+	* the pieces are swapped back. Returns whether a chain was formed.
+	*/
+	private boolean trySwap (int row, int column) {
+		if (!swapAndClear(row, column)) {
+			return false;
+		}
+		numMoveLeft--;
+		gui.setMoveLeft(numMoveLeft);
+		fillEmptySlots();
+		removeExistingChains(true);
+		totalChainLength = 0;
+		return true;
+	}
+
+	/**
+	* swapAndClear
+	* This method swaps the indicated piece with the first piece selected. If a
+	* chain is formed, it is removed and scored. Otherwise the pieces are
+	* swapped back. Returns whether a chain was formed.
+	*/
+	private boolean swapAndClear (int row, int column) {
+		swapWithFirstSelection(row, column, true);
+
+		if (checkChainFormation(row, column)) {
+			score += totalChainLength;
+			gui.showChainSizeMessage(totalChainLength);
+			gui.setScore(score);
+			rebalance();
+			return true;
+		}
+		gui.showInvalidSwapMessage();
+		swapWithFirstSelection(row, column, true);
+		return false;
+	}
+
+	/**
+	* isGameOver
+	* Returns true if the player is out of moves or there are no more possible moves.
+	*/
+	public boolean isGameOver () {
+		return numMoveLeft <= 0 || !findPossibleMoves(false);
+	}
+
 	/**
 	 * checkChainFormation
 	 * Checks for horizontal and vertical chain formation for the first piece selected
@@ -142,54 +419,109 @@ public class Bejeweled {
 
 	/**
 	 * findPossibleMoves
-	 * This method checks all possible moves. As soon as it finds a move that results
-	 * in a chain, it returns true. If it can't find any valid moves, it returns false.
+	 * This method checks all possible moves. If it finds a move that results in a
+	 * chain, it returns true. If it can't find any valid moves, it returns false.
 	 *
 	 * @param displayHint - Indicates whether or not a hint should be displayed. If
 	 * set to true, this method calls the showHintMessage method in BejeweledGUI.
 	 */
 	private boolean findPossibleMoves (boolean displayHint) {
-		findingValidMove = true;
+		if (!displayHint) {
+			return hasValidMove();
+		}
+		BoardAnalysis analysis = analyzeBoard();
+		if (analysis.hasValidMove()) {
+			int[] bestMove = analysis.getBestMove();
+			gui.showHintMessage(bestMove[0], bestMove[1]);
+		}
+		return analysis.hasValidMove();
+	}
 
-		for(int row = 0; row < NUMROW; row++) {
-			for (int col = 0; col < NUMCOL; col++) {
-				slot1Row = row;
-				slot1Col = col;
+	/**
+	* hasValidMove
+	* Returns true if some swap would form a chain. Like the original
+	* findPossibleMoves it stops at the first one, so checking whether the
+	* game is over neither scores every move nor fills the analysis cache.
+	*/
+	public boolean hasValidMove () {
+		return scanner.hasPossibleMove(board);
+	}
+
+	/**
+	* analyzeBoard
+	* Returns the valid moves on the current board and the best of them. Boards
+	* that were analysed recently are looked up in the analysis cache instead of
+	* being analysed again.
+	*/
+	public BoardAnalysis analyzeBoard () {
+		BoardAnalysis analysis = analysisCache.get(boardHash, board);
+		if (analysis == null) {
+			analysis = computeAnalysis();
+			analysisCache.put(boardHash, board, analysis);
+		}
+		return analysis;
+	}
 
-				// Check if swapping the current piece left or right results in any chain formations.
-				// If so, return true.
-				for(int i = -1; i <= 1; i += 2) {
+	/**
+	* computeAnalysis
+	* This method tries swapping pieces with the piece to their right and the
+	* piece below them, and records the swaps that result in a chain together
+	* with the number of points they score. On a board without chains the
+	* scanner marks exactly the swaps that form one, so only those are tried;
+	* on a board that still has chains every swap is tried.
+	*/
+	private BoardAnalysis computeAnalysis () {
+		List<int[]> validMoves = new ArrayList<int[]>();
+		int[] bestMove = null;
+		int bestMatchCount = 0;
+		boolean tryAll = scanner.hasChain(board);
+		if (moveMarks == null) {
+			moveMarks = new int[NUMROW][NUMCOL];
+		}
+		int remaining = tryAll ? 2 * NUMROW * NUMCOL : scanner.markMoves(board, moveMarks);
+		if (remaining == 0) {
+			return new BoardAnalysis(validMoves, bestMove, bestMatchCount);
+		}
+
+		int savedRow = slot1Row;
+		int savedCol = slot1Col;
+
+		findingValidMove = true;
+		for (int row = 0; row < NUMROW && remaining > 0; row++) {
+			for (int col = 0; col < NUMCOL && remaining > 0; col++) {
+				int swaps = tryAll ? ChainScanner.SWAP_RIGHT | ChainScanner.SWAP_DOWN : moveMarks[row][col];
+				if (swaps == 0) {
+					continue;
+				}
+				moveMarks[row][col] = 0;
+				// i = 0 checks the piece to the right, i = 1 the piece below
+				for (int i = 0; i < 2; i++) {
 					int newRow = row + i;
-					if (newRow >= 0 && newRow < NUMROW) {
-						swapWithFirstSelection (newRow, col, false);
-						boolean foundValidMove = checkHorizontalChain(newRow, col, board[newRow][col]) || checkVerticalChain(newRow, col, board[newRow][col]);
-						swapWithFirstSelection (newRow, col, false);
-						if (foundValidMove) {
-							if (displayHint) {
-								gui.showHintMessage(slot1Row, slot1Col);
-							}
-							totalChainLength = 0;
-							findingValidMove = false;
-							return true;
-						}
+					int newCol = col + 1 - i;
+					if ((swaps & (i == 0 ? ChainScanner.SWAP_RIGHT : ChainScanner.SWAP_DOWN)) == 0) {
+						continue;
 					}
-				}
-
-				// Check if swapping the current piece up or down results in any chain formations.
-				// If so, return true.
-				for(int i = -1; i <= 1; i += 2) {
-					int newCol = col + i;
-					if (newCol >= 0 && newCol < NUMCOL) {
-						swapWithFirstSelection (row, newCol, false);
-						boolean foundValidMove = checkHorizontalChain(row, newCol, board[row][newCol]) || checkVerticalChain(row, newCol, board[row][newCol]);
-						swapWithFirstSelection (row, newCol, false);
-						if (foundValidMove) {
-							if (displayHint) {
-								gui.showHintMessage(slot1Row, slot1Col);
+					remaining--;
+					if (newRow < NUMROW && newCol < NUMCOL) {
+						slot1Row = row;
+						slot1Col = col;
+						swapWithFirstSelection(newRow, newCol, false);
+						int movedCount = countChainAt(newRow, newCol);
+						int otherCount = countChainAt(row, col);
+						swapWithFirstSelection(newRow, newCol, false);
+
+						if (movedCount + otherCount > 0) {
+							int[] move;
+							if (movedCount > 0) {
+								move = new int[] {row, col, newRow, newCol};
+							} else {
+								move = new int[] {newRow, newCol, row, col};
+							}
+							validMoves.add(move);
+							if (movedCount + otherCount > bestMatchCount) {
+								bestMove = move;
+								bestMatchCount = movedCount + otherCount;
 							}
-							totalChainLength = 0;
-							findingValidMove = false;
-							return true;
 						}
 					}
 				}
@@ -197,7 +529,29 @@ public class Bejeweled {
 		}
 		totalChainLength = 0;
 		findingValidMove = false;
-		return false;
+		slot1Row = savedRow;
+		slot1Col = savedCol;
+		return new BoardAnalysis(validMoves, bestMove, bestMatchCount);
+	}
+
+	/**
+	* countChainAt
+	* Returns the number of points the chains through the indicated piece are
+	* worth, counted the same way as in checkChainFormation. Must be called with
+	* findingValidMove set so the chains are not removed. A run of EMPTY slots
+	* is not a chain.
+	*/
+	private int countChainAt (int row, int column) {
+		totalChainLength = 0;
+		if (board[row][column] == EMPTY) {
+			return 0;
+		}
+		boolean verticalChainFound = checkVerticalChain(row, column, board[row][column]);
+		boolean horizontalChainFound = checkHorizontalChain(row, column, board[row][column]);
+		if (verticalChainFound || horizontalChainFound) {
+			totalChainLength++;
+		}
+		return totalChainLength;
 	}
 
 	/**
@@ -206,26 +560,103 @@ public class Bejeweled {
 	* are no more chains left on the board.
 	*/
 	private void removeExistingChains (boolean gameInProgress) {
+		int chainLength;
 		do {
-			totalChainLength = 0;
-			findExistingChains();
-			if (gameInProgress && totalChainLength != 0) {
-				gui.showChainReactionMessage();
-				score += totalChainLength;
-				gui.setScore(score);
-			}
+			chainLength = clearChains(gameInProgress);
 			fillEmptySlots();
-		} while (totalChainLength != 0);
+		} while (chainLength != 0);
+	}
+
+	/**
+	* clearChains
+	* This method removes the chains currently on the board, without refilling
+	* the board, and returns their total length (0 if there were none). If
+	* gameInProgress is true, the chains are scored as a chain reaction. A
+	* game with a resolver removes all chains at once, including ones that
+	* cross each other, and scores one point per piece removed.
+	*/
+	int clearChains (boolean gameInProgress) {
+		totalChainLength = 0;
+		if (resolver != null) {
+			totalChainLength = resolver.clearChains(this);
+		} else {
+			findExistingChains();
+		}
+		if (gameInProgress) {
+			scoreChainReaction(totalChainLength);
+		}
+		return totalChainLength;
+	}
+
+	/**
+	* clearChainsInRows
+	* Removes the chains through the slots in rows [fromRow, toRow) the same
+	* way clearChains does in a game without a resolver, and returns their
+	* length without scoring it. Calling it for consecutive bands of rows, top
+	* to bottom, removes the same chains as one call to clearChains, so the
+	* work can be spread out (see TimeAttackMode).
+	*/
+	int clearChainsInRows (int fromRow, int toRow) {
+		totalChainLength = 0;
+		removeChainsInRows(fromRow, toRow);
+		int chainLength = totalChainLength;
+		totalChainLength = 0;
+		return chainLength;
+	}
+
+	/**
+	* scoreChainReaction
+	* Scores chains of the given total length that were formed by falling
+	* pieces and tells the player about them, if there were any.
+	*/
+	void scoreChainReaction (int chainLength) {
+		if (chainLength != 0) {
+			gui.showChainReactionMessage();
+			score += chainLength;
+			gui.setScore(score);
+		}
 	}
 
 	/**
 	* findExistingChains
 	* This method traverses the game board looking for existing chains. Once
-	* it finds one, it stops looking.
+	* it finds one, it stops looking. The scanner marks the slots that are in
+	* a chain first, and only those are looked at: removing a chain only
+	* empties slots, so it never puts another piece into a chain.
 	*/
 	private void findExistingChains () {
-		for(int row = 0; row < NUMROW; row++) {
-			for (int col = 0; col < NUMCOL; col++) {
+		removeChainsInRows(0, NUMROW);
+	}
+
+	/**
+	* removeChainsInRows
+	* Does the work of findExistingChains for the slots in rows [fromRow,
+	* toRow). A slot is in a chain exactly if it is in a run of
+	* MIN_CHAIN_LENGTH pieces, which lies within MIN_CHAIN_LENGTH - 1 rows of
+	* it, so only the band and that many rows on either side are scanned; the marks the scanner leaves in those neighbouring rows are
+	* cleared again, and their rows get scanned with their own band. Slots
+	* above the band may already have been emptied, which is fine for the
+	* same reason the marks are: emptying slots never forms a chain.
+	*/
+	private void removeChainsInRows (int fromRow, int toRow) {
+		if (chainMarks == null) {
+			chainMarks = new int[NUMROW][NUMCOL];
+		}
+		int from = Math.max(0, fromRow - (MIN_CHAIN_LENGTH - 1));
+		int to = Math.min(NUMROW, toRow + (MIN_CHAIN_LENGTH - 1));
+		int remaining;
+		if (from == 0 && to == NUMROW) {
+			remaining = scanner.markChains(board, chainMarks);
+		} else {
+			remaining = scanner.markChains(Arrays.copyOfRange(board, from, to), Arrays.copyOfRange(chainMarks, from, to));
+		}
+		for(int row = fromRow; row < toRow && remaining > 0; row++) {
+			for (int col = 0; col < NUMCOL && remaining > 0; col++) {
+				if (chainMarks[row][col] == 0) {
+					continue;
+				}
+				chainMarks[row][col] = 0;
+				remaining--;
 				int piece = board[row][col];
 				if (piece != EMPTY) {
 					boolean foundVerticalChain = checkVerticalChain(row, col, piece);
@@ -236,10 +667,18 @@ public class Bejeweled {
 				}
 			}
 		}
+		for (int row = from; row < to; row++) {
+			if (row < fromRow || row >= toRow) {
+				Arrays.fill(chainMarks[row], 0);
+			}
+		}
 	}
 
-	/*
-	private int[][] copyBoard () {
+	/**
+	* copyBoard
+	* Returns a copy of the current content of the game board.
+	*/
+	public int[][] copyBoard () {
 		int[][] boardCopy = new int[NUMROW][NUMCOL];
 
 		for(int row = 0; row < NUMROW; row++) {
@@ -248,7 +687,24 @@ public class Bejeweled {
 			}
 		}
 		return boardCopy;
-	}*/
+	}
+
+	/**
+	* setSlot
+	* Puts the given piece (or EMPTY) in the indicated slot and updates the board hash.
+	*/
+	private void setSlot (int row, int column, int piece) {
+		boardHash ^= keys.key(row, column, board[row][column]) ^ keys.key(row, column, piece);
+		board[row][column] = piece;
+	}
+
+	/**
+	* isOnBoard
+	* Returns true if the given location is inside the game board.
+	*/
+	private boolean isOnBoard (int row, int column) {
+		return row >= 0 && row < NUMROW && column >= 0 && column < NUMCOL;
+	}
 
 	/**
 	* checkAdjacentPieces
@@ -270,9 +726,10 @@ public class Bejeweled {
 	*/
 	private void swapWithFirstSelection (int row, int column, boolean showONGUI) {
 		int temp = board[slot1Row][slot1Col];
-		board[slot1Row][slot1Col] = board[row][column];
-		board[row][column] = temp;
+		setSlot(slot1Row, slot1Col, board[row][column]);
+		setSlot(row, column, temp);
 		if (showONGUI) {
+			gui.showSwap(slot1Row, slot1Col, row, column);
 			gui.setPiece(slot1Row, slot1Col, board[slot1Row][slot1Col]);
 			gui.setPiece(row, column, board[row][column]);
 		}
@@ -295,7 +752,10 @@ public class Bejeweled {
 			totalChainLength += chainLength - 1; // excludes current piece
 			if (!findingValidMove) {
 				for(int i = startChainIndex; i <= endChainIndex; i++) {
-					board[row][i] = EMPTY;
+					if (board[row][i] != EMPTY) {
+						numPiecesCleared++;
+					}
+					setSlot(row, i, EMPTY);
 					gui.highlightSlot(row, i, CHAIN_COLOUR);
 				}
 			}
@@ -371,7 +831,10 @@ public class Bejeweled {
 			totalChainLength += chainLength - 1; // excludes current piece
 			if (!findingValidMove) {
 				for (int i = startChainIndex; i <= endChainIndex; i++) {
-					board[i][column] = EMPTY;
+					if (board[i][column] != EMPTY) {
+						numPiecesCleared++;
+					}
+					setSlot(i, column, EMPTY);
 					gui.highlightSlot(i, column, CHAIN_COLOUR);
 				}
 			}
@@ -437,19 +900,60 @@ public class Bejeweled {
 	* the top of the board.
 	*/
 	private void fillEmptySlots () {
+		if (resolver != null) {
+			resolver.fillEmptySlots(this);
+			return;
+		}
 		for (int column = 0; column < NUMCOL; column++) {
-			for (int row = 0; row < NUMROW; row++) {
-				if (board[row][column] == EMPTY) {
-					gui.unhighlightSlot(row, column);
-					for (int i = row; i > 0; i--) {
-						board[i][column] = board[i-1][column];
-						gui.setPiece(i, column, board[i][column]);
-					}
-					board[0][column] = (int)(Math.random() * NUMPIECESTYLE);
-					gui.setPiece(0, column, board[0][column]);
+			fillColumn(column);
+		}
+	}
+
+	/**
+	* fillColumn
+	* This method fills the empty spots in one column, the same way as
+	* fillEmptySlots. Columns are independent of each other, so they can be
+	* filled one at a time and in any order.
+	*/
+	void fillColumn (int column) {
+		PieceDistribution pieces = distribution;
+		for (int row = 0; row < NUMROW; row++) {
+			if (board[row][column] == EMPTY) {
+				gui.unhighlightSlot(row, column);
+				gui.showFall(row, column);
+				for (int i = row; i > 0; i--) {
+					setSlot(i, column, board[i-1][column]);
+					gui.setPiece(i, column, board[i][column]);
 				}
+				setSlot(0, column, sampleOnTop(pieces, column));
+				gui.setPiece(0, column, board[0][column]);
+			}
+		}
+	}
+
+	/**
+	* sampleOnTop
+	* Picks the piece that falls in at the top of the given column. The pieces
+	* it will land on are the nearest ones below the top that are not EMPTY,
+	* since every EMPTY slot below is filled from above.
+	*/
+	private int sampleOnTop (PieceDistribution pieces, int column) {
+		long bits = refill.nextBits(column);
+		if (!pieces.avoidsChains()) {
+			return pieces.sample(bits);
+		}
+		int neighbour = EMPTY;
+		for (int row = 1; row < NUMROW; row++) {
+			int piece = board[row][column];
+			if (piece == EMPTY) {
+				continue;
+			}
+			if (neighbour != EMPTY) {
+				return pieces.sample(bits, neighbour, piece);
 			}
+			neighbour = piece;
 		}
+		return pieces.sample(bits);
 	}
 
 	/**
@@ -0,0 +1,70 @@
+/**
+* BejeweledDisplay.java
+* The methods the game calls to show its state to the player. BejeweledGUI
+* implements them with Swing, HeadlessDisplay ignores them so the game can be
+* played without a screen (e.g. by the puzzle solver).
+*/
+
+import java.awt.Color;
+
+public interface BejeweledDisplay {
+	/**
+	* Display the specified piece on the specified slot
+	*
+	* @param row row of the slot
+	* @param col column of the slot
+	* @param piece index of the piece to be displayed
+	*/
+	void setPiece(int row, int col, int piece);
+
+	/**
+	* Highlight the specified slot with the specified colour
+	*/
+	void highlightSlot(int row, int col, Color colour);
+
+	/**
+	* Unhighlight the specified slot to the default grid colour
+	*/
+	void unhighlightSlot(int row, int col);
+
+	/**
+	* Called just before the pieces on the two slots are swapped, so the
+	* display can show them trading places. setPiece is still called for
+	* both slots afterwards.
+	*/
+	void showSwap(int row1, int col1, int row2, int col2);
+
+	/**
+	* Called when the piece on the specified slot is removed and the pieces
+	* above it fall down one slot, so the display can show them falling.
+	* setPiece is still called for every slot that changed.
+	*/
+	void showFall(int row, int col);
+
+	/**
+	* Returns whether the display shows the board to anyone. If not, the game
+	* may skip work done only for the display, like highlighting the pieces
+	* in a chain on a very large board.
+	*/
+	boolean showsBoard();
+
+	void setScore(int point);
+
+	void setMoveLeft(int num);
+
+	void showInvalidSwapMessage();
+
+	void showInvalidMoveMessage();
+
+	void showHintMessage(int row, int column);
+
+	void showChainSizeMessage(int chainSize);
+
+	void showChainReactionMessage();
+
+	void showOutOfMovesMessage(int point);
+
+	void showNoMoreMovesMessage(int point, int numMove);
+
+	void showGameOverMessage(int point, int numMove);
+}
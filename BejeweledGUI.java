@@ -7,9 +7,11 @@ import javax.swing.*;
 import javax.swing.JComponent;
 import javax.swing.border.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.*;
 
-public class BejeweledGUI {
+public class BejeweledGUI implements BejeweledDisplay {
 	// the name of the configuration file
 	private final String CONFIGFILE = "config.txt";
 	private final Color BACKGROUNDCOLOUR = new Color(255, 255, 255);
@@ -21,6 +23,11 @@ public class BejeweledGUI {
 	private JTextField score;
 	private JTextField numMoveLeft;
 	private JButton hintButton;
+	private JLabel message;
+
+	private final int HINT_MILLIS = 1500;	// how long a hint stays highlighted
+	private int hintRow = -1, hintCol = -1;	// the slot highlighted by the last hint, until it is unhighlighted
+	private boolean gameOver;				// set once the game over message has been shown
 
 	private String messageIconFile;
 	private ImageIcon messageIcon;
@@ -28,6 +35,14 @@ public class BejeweledGUI {
 	private String logoIcon;
 	private String[] iconFile;
 
+	// draws and moves the pieces, or null if they are shown as label icons
+	// (run with -Dbejeweled.animation=false)
+	private AnimatedBoardPanel animator;
+
+	// keys under which each slot stores its own location
+	private final String ROW_PROPERTY = "row";
+	private final String COLUMN_PROPERTY = "column";
+
 	public final int NUMPIECESTYLE = 7;    // number of different piece styles
 	public final int NUMROW = 8;           // number of rows on the game board
 	public final int NUMCOL = 8;           // number of columns on the game board
@@ -101,6 +116,8 @@ public class BejeweledGUI {
 				slots [i] [j] = new JLabel ();
 				slots[i][j].setPreferredSize(new Dimension(PIECESIZE, PIECESIZE));
 				slots [i] [j].setHorizontalAlignment (SwingConstants.CENTER);      
+				slots[i][j].putClientProperty(ROW_PROPERTY, i);
+				slots[i][j].putClientProperty(COLUMN_PROPERTY, j);
 			}
 		}
 	}
@@ -108,7 +125,17 @@ public class BejeweledGUI {
 
 	// createPlayPanel
 	private JPanel createPlayPanel() {
-		JPanel panel = new JPanel(); 
+		JPanel panel;
+		if (Boolean.parseBoolean(System.getProperty("bejeweled.animation", "true"))) {
+			Image[] pieceImages = new Image[NUMPIECESTYLE];
+			for (int i = 0; i < NUMPIECESTYLE; i++) {
+				pieceImages[i] = pieceIcon[i].getImage();
+			}
+			animator = new AnimatedBoardPanel(NUMROW, NUMCOL, pieceImages, BACKGROUNDCOLOUR);
+			panel = animator;
+		} else {
+			panel = new JPanel(); 
+		}
 		panel.setPreferredSize(new Dimension(PLAYPANEWIDTH, PLAYPANEHEIGHT));
 		panel.setBackground(BACKGROUNDCOLOUR);
 		panel.setLayout(new GridLayout(NUMROW, NUMCOL));
@@ -194,10 +221,21 @@ public class BejeweledGUI {
 		endGameButton.setFont(buttonFont);
 		endGameButton.setForeground(Color.DARK_GRAY);
 
+		// Create the label that shows the messages about the last move; it
+		// replaces the dialogs, so the game never waits for the player
+		message = new JLabel(" ", JLabel.CENTER);
+		message.setFont(new Font ("Arial", Font.PLAIN, 14));
+		message.setForeground(Color.DARK_GRAY);
+		message.setPreferredSize(new Dimension(INFOPANEWIDTH - 10, 3 * PIECESIZE));
+		message.setVerticalAlignment(SwingConstants.TOP);
+		message.setHorizontalTextPosition(SwingConstants.CENTER);
+		message.setVerticalTextPosition(SwingConstants.BOTTOM);
+
 		panel.add(scorePanel);
 		panel.add(moveLeftPanel);
 		panel.add(hintButton);
 		panel.add(endGameButton);
+		panel.add(message);
 
 		return panel;
 	}
@@ -239,21 +277,14 @@ public class BejeweledGUI {
 
 
 	/**
-	* Returns the column number of where the given JLabel is on
+	* Returns the row number of where the given JLabel is on
 	* 
-	* @param  label the label whose column number to be requested
-	* @return the column number
+	* @param  label the label whose row number to be requested
+	* @return the row number, or -1 if the label is not a slot
 	*/
 	public int getRow(JLabel label) {
-		int result = -1;
-		for (int i = 0; i < NUMROW && result == -1; i++) {
-			for (int j = 0; j < NUMCOL && result == -1; j++) {
-				if (slots[i][j] == label) {
-					result = i;
-				}
-			}
-		}
-		return result;
+		Object row = label.getClientProperty(ROW_PROPERTY);
+		return row == null ? -1 : (Integer) row;
 	}
 
 
@@ -261,18 +292,11 @@ public class BejeweledGUI {
 	* Returns the column number of where the given JLabel is on
 	* 
 	* @param  label the label whose column number to be requested
-	* @return the column number
+	* @return the column number, or -1 if the label is not a slot
 	*/
 	public int getColumn(JLabel label) {
-		int result = -1;
-		for (int i = 0; i < NUMROW && result == -1; i++) {
-			for (int j = 0; j < NUMCOL && result == -1; j++) {
-				if (slots[i][j] == label) {
-					result = j;
-				}
-			}
-		}
-		return result;
+		Object column = label.getClientProperty(COLUMN_PROPERTY);
+		return column == null ? -1 : (Integer) column;
 	}
 
 
@@ -281,6 +305,15 @@ public class BejeweledGUI {
 	}
 
 
+	/**
+	* Returns the times between animation frames, or null if the pieces
+	* are not animated
+	*/
+	public LatencyHistogram getFrameTimes() {
+		return animator == null ? null : animator.getFrameTimes();
+	}
+
+
 	public void addListener (BejeweledListener listener) {
 		// add listener for each slot on the game board
 		for (int i = 0; i < NUMROW; i++) {
@@ -303,7 +336,11 @@ public class BejeweledGUI {
 	* @param piece index of the piece to be displayed
 	*/
 	public void setPiece(int row, int col, int piece) {
-		slots[row][col].setIcon(pieceIcon[piece]);
+		if (animator != null) {
+			animator.setPiece(row, col, piece);
+		} else {
+			slots[row][col].setIcon(pieceIcon[piece]);
+		}
 	}
 
 
@@ -315,6 +352,7 @@ public class BejeweledGUI {
 	* @param colour colour used to highlight the slot
 	*/
 	public void highlightSlot(int row, int col, Color colour) {
+		forgetHint(row, col);
 		slots[row][col].setBorder (new LineBorder (colour));   
 	}
 
@@ -326,10 +364,47 @@ public class BejeweledGUI {
 	* @param col column of the slot
 	*/
 	public void unhighlightSlot(int row, int col) {
+		forgetHint(row, col);
 		slots[row][col].setBorder (new LineBorder (BACKGROUNDCOLOUR));   
 	}
 
 
+	/**
+	* Slide the pieces of the two slots into each other's place
+	* 
+	* @param row1 row of the first slot
+	* @param col1 column of the first slot
+	* @param row2 row of the second slot
+	* @param col2 column of the second slot
+	*/
+	public void showSwap(int row1, int col1, int row2, int col2) {
+		if (animator != null) {
+			animator.showSwap(row1, col1, row2, col2);
+		}
+	}
+
+
+	/**
+	* Fade out the piece on the specified slot and let the pieces above it fall
+	* 
+	* @param row row of the slot
+	* @param col column of the slot
+	*/
+	public void showFall(int row, int col) {
+		if (animator != null) {
+			animator.showFall(row, col);
+		}
+	}
+
+
+	/**
+	* The window always shows the board
+	*/
+	public boolean showsBoard() {
+		return true;
+	}
+
+
 	/**
 	* Display the score on the corresponding textfield
 	* 
@@ -355,6 +430,9 @@ public class BejeweledGUI {
 	* 
 	*/
 	public void resetGameBoard() {
+		if (animator != null) {
+			animator.clear();
+		}
 		for (int i = 0; i < NUMROW; i++) {
 			for (int j = 0; j < NUMCOL; j++) {
 				slots[i][j].setIcon(null);
@@ -363,49 +441,76 @@ public class BejeweledGUI {
 	}
 
 
+	/**
+	* Show the message about a swap that forms no chain below the buttons
+	* 
+	*/
 	public void showInvalidSwapMessage () {
-		JOptionPane.showMessageDialog(null, "That move does not result in any chain\nformations!", "Invalid Move!", JOptionPane.ERROR_MESSAGE, null); 
+		showMessage("Chansey says: \"That move does not result in any chain formations!\"", null);
 	}
 
 
 	/**
-	* Display a pop up window displaying the message about invalid move
+	* Show the message about an invalid move below the buttons
 	* 
 	*/
 	public void showInvalidMoveMessage () {
-		JOptionPane.showMessageDialog(null, "That move is invalid! Selected pieces must be\nadjacent to one aother.", "Invalid Move!", JOptionPane.ERROR_MESSAGE, null); 
+		showMessage("Chansey says: \"That move is invalid! Selected pieces must be adjacent to one another.\"", null);
 	}
 
 
+	/**
+	* Highlight the hinted slot for HINT_MILLIS, unless it is highlighted or
+	* unhighlighted by the game before that
+	* 
+	* @param row row of the hinted slot
+	* @param column column of the hinted slot
+	*/
 	public void showHintMessage (int row, int column) {
 		highlightSlot(row, column, Color.RED);
-		JOptionPane.showMessageDialog(null, "Chansey says: \"Here's a hint!\"", "Hint!", JOptionPane.INFORMATION_MESSAGE, messageIcon);
-		unhighlightSlot(row, column);
+		hintRow = row;
+		hintCol = column;
+		showMessage("Chansey says: \"Here's a hint!\"", messageIcon);
+		Timer timer = new Timer(HINT_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				if (hintRow >= 0) {
+					unhighlightSlot(hintRow, hintCol);
+				}
+			}
+		});
+		timer.setRepeats(false);
+		timer.start();
 	}
 
 
 	/**
-	* Display a pop up window specifying the size of the chain(s) that is (are) formed after the swap
+	* Show the size of the chain(s) that is (are) formed after the swap below the buttons
 	* 
 	* @param chainSize the size of the chain(s) that is (are) formed
 	*/
 	public void showChainSizeMessage(int chainSize){
-		JOptionPane.showMessageDialog(null, "Chansey says: \"Chain(s) formed! You\nearned " + chainSize + " points.\"", "Chain Formed!", JOptionPane.INFORMATION_MESSAGE, messageIcon); 
+		showMessage("Chansey says: \"Chain(s) formed! You earned " + chainSize + " points.\"", messageIcon);
 	}
 
 
 	public void showChainReactionMessage() {
-		JOptionPane.showMessageDialog(null, "Chansey says: \"Chain(s) formed by\nfalling stones!\"", "Chain Reaction!", JOptionPane.INFORMATION_MESSAGE, messageIcon); 
+		showMessage("Chansey says: \"Chain(s) formed by falling stones!\"", messageIcon);
 	}
 
 
 	public void showOutOfMovesMessage (int point) {
+		if (!startGameOver()) {
+			return;
+		}
 		JOptionPane.showMessageDialog(null, "Chansey says: \"Out of moves! You\nended the game with " + point + " points.\nThanks for playing!\"", "Game over!", JOptionPane.INFORMATION_MESSAGE, messageIcon);
 		System.exit(0);
 	}
 
 
 	public void showNoMoreMovesMessage (int point, int numMove) {
+		if (!startGameOver()) {
+			return;
+		}
 		JOptionPane.showMessageDialog(null, "Chansey says: \"No more possible\nmoves. You ended the game with\n" + point + " points after " + numMove + " moves. Thanks\nfor playing!\"", "Game over!", JOptionPane.INFORMATION_MESSAGE, messageIcon);
 		System.exit(0);
 	}
@@ -418,7 +523,48 @@ public class BejeweledGUI {
 	* @param numMove the number of moves used in the game
 	*/
 	public void showGameOverMessage(int point, int numMove){
+		if (!startGameOver()) {
+			return;
+		}
 		JOptionPane.showMessageDialog(null, "Chansey says: \"You got " + point + " points with\n" + numMove + " moves. Thanks for playing!\"", "Game Over!", JOptionPane.INFORMATION_MESSAGE, messageIcon); 
 		System.exit(0);
 	}
+
+
+	/**
+	* Show the specified message below the buttons until the next one
+	* 
+	* @param text the message
+	* @param icon the icon shown above the message, or null
+	*/
+	private void showMessage(String text, Icon icon) {
+		message.setIcon(icon);
+		message.setText("<html><div style='text-align: center; width: " + (INFOPANEWIDTH - 40) + "px'>" + text + "</div></html>");
+	}
+
+
+	/**
+	* Forget the hint if it was on the specified slot, so the hint timer does
+	* not unhighlight a slot the game has highlighted since
+	*/
+	private void forgetHint(int row, int col) {
+		if (row == hintRow && col == hintCol) {
+			hintRow = -1;
+			hintCol = -1;
+		}
+	}
+
+
+	/**
+	* Returns true the first time it is called. The game can report that it is
+	* over more than once (e.g. out of moves and no more moves), but only the
+	* first message is shown.
+	*/
+	private boolean startGameOver() {
+		if (gameOver) {
+			return false;
+		}
+		gameOver = true;
+		return true;
+	}
 }
\ No newline at end of file
@@ -1,13 +1,23 @@
+/**
+* BejeweledListener.java
+* Turns mouse events into commands for the InputPipeline. Clicking a piece
+* selects it, as before. Pressing on a piece and dragging it at least half a
+* slot towards a neighbour swaps the two.
+*/
+
 import javax.swing.*;
 import java.awt.event.*;
 import java.awt.Component;
 
 public class BejeweledListener implements MouseListener {
 	private BejeweledGUI gui;
-	private Bejeweled game;
+	private InputPipeline pipeline;
+
+	private JLabel pressedLabel;	// the piece the mouse was pressed on, or null
+	private int pressedX, pressedY;	// where the mouse was pressed, in screen coordinates
 
-	public BejeweledListener (Bejeweled game, BejeweledGUI gui) {
-		this.game = game;
+	public BejeweledListener (InputPipeline pipeline, BejeweledGUI gui) {
+		this.pipeline = pipeline;
 		this.gui = gui;
 		gui.addListener (this);
 	}
@@ -15,25 +25,52 @@ public class BejeweledListener implements MouseListener {
 	public void mouseClicked (MouseEvent event) {
 		Component objectClicked = event.getComponent();
 
-		if (objectClicked instanceof JLabel) {
-			JLabel label = (JLabel) objectClicked;		
-			int row = gui.getRow(label);
-			int column = gui.getColumn (label);
-			game.play(row, column);
-		}
-		else if (objectClicked instanceof JButton) {
+		// clicks on pieces are handled when the mouse is released
+		if (objectClicked instanceof JButton) {
 			if (event.getSource() == gui.getHintButton()) {
-				game.displayHint();
+				pipeline.submitHint(eventNanos(event));
 			} else {
-				game.endGame();
+				pipeline.submitEndGame(eventNanos(event));
 			}
 		}
 	}
 
 	public void mousePressed (MouseEvent event) {
+		if (event.getComponent() instanceof JLabel) {
+			pressedLabel = (JLabel) event.getComponent();
+			pressedX = event.getXOnScreen();
+			pressedY = event.getYOnScreen();
+		}
 	}
 
 	public void mouseReleased (MouseEvent event) {
+		if (pressedLabel == null) {
+			return;
+		}
+		JLabel label = pressedLabel;
+		pressedLabel = null;
+
+		int row = gui.getRow(label);
+		int column = gui.getColumn(label);
+		int dx = event.getXOnScreen() - pressedX;
+		int dy = event.getYOnScreen() - pressedY;
+		int threshold = Math.max(1, label.getWidth() / 2);
+
+		if (Math.abs(dx) < threshold && Math.abs(dy) < threshold) {
+			pipeline.submitSelect(row, column, eventNanos(event));
+		} else {
+			// swap with the neighbour in the direction the piece was dragged furthest
+			int newRow = row;
+			int newColumn = column;
+			if (Math.abs(dx) >= Math.abs(dy)) {
+				newColumn += Integer.signum(dx);
+			} else {
+				newRow += Integer.signum(dy);
+			}
+			if (newRow >= 0 && newRow < gui.NUMROW && newColumn >= 0 && newColumn < gui.NUMCOL) {
+				pipeline.submitSwap(row, column, newRow, newColumn, eventNanos(event));
+			}
+		}
 	}
 
 
@@ -42,4 +79,15 @@ public class BejeweledListener implements MouseListener {
 
 	public void mouseExited (MouseEvent event) {
 	}
-}
\ No newline at end of file
+
+	/**
+	* eventNanos
+	* Returns when the event happened on the System.nanoTime() clock. The event
+	* only carries a time in milliseconds, so the time it spent waiting in the
+	* event queue is estimated from the difference to the current time.
+	*/
+	private static long eventNanos (MouseEvent event) {
+		long waitedMillis = Math.max(0, System.currentTimeMillis() - event.getWhen());
+		return System.nanoTime() - waitedMillis * 1000000;
+	}
+}
@@ -1,12 +1,72 @@
 /**
  * BejeweledRunner.java
  * Runs the Bejeweled game.
+ *
+ * Run with -Dbejeweled.latency=true to print the input-to-repaint latency
+ * and animation frame time histograms when the game exits, with
+ * -Dbejeweled.spectatorPort=port to let SpectatorClients watch the game on
+ * that port, and with
+ * -Dbejeweled.timeAttack=seconds to play against the clock instead of with
+ * a limited number of moves. -Dbejeweled.animation=false shows the pieces
+ * without animation. The pieces are picked as set by -Dbejeweled.pieceWeights
+ * and -Dbejeweled.chainWeight (see PieceDistribution.fromProperties), and
+ * -Dbejeweled.balance=strength holds back pieces common in the top rows.
+ * -Dbejeweled.parallel=true resolves cascades on all processors (see
+ * CascadeResolver.fromProperties).
  */
 
+import java.io.IOException;
+
 public class BejeweledRunner {
 	public static void main (String[] args) {
 		BejeweledGUI gui = new BejeweledGUI ();
-		Bejeweled game = new Bejeweled (gui);
-		BejeweledListener listener = new BejeweledListener (game, gui);
+		// the game runs on the input pipeline's game thread, the window on the event thread
+		BejeweledDisplay display = new EventThreadDisplay(gui);
+
+		int spectatorPort = Integer.getInteger("bejeweled.spectatorPort", 0);
+		if (spectatorPort > 0) {
+			try {
+				SpectatorServer server = new SpectatorServer(display, gui.NUMROW, gui.NUMCOL, spectatorPort);
+				server.start();
+				display = server;
+			} catch (IOException iox) {
+				System.out.println("Error starting the spectator server: " + iox.getMessage());
+			}
+		}
+
+		int timeAttackSeconds = Integer.getInteger("bejeweled.timeAttack", 0);
+		if (timeAttackSeconds > 0) {
+			display = new QuietDisplay(display);
+		}
+
+		Bejeweled game = new Bejeweled (display, gui.NUMROW, gui.NUMCOL, gui.NUMPIECESTYLE, new RefillSequence(), CascadeResolver.fromProperties(),
+			PieceDistribution.fromProperties(gui.NUMPIECESTYLE));
+		game.setBalancing(Double.parseDouble(System.getProperty("bejeweled.balance", "0")));
+		InputPipeline pipeline = new InputPipeline(game);
+		new BejeweledListener (pipeline, gui);
+
+		if (timeAttackSeconds > 0) {
+			final TimeAttackMode timeAttack = new TimeAttackMode(game, display, timeAttackSeconds, pipeline.getGameThread());
+			pipeline.setTimeAttackMode(timeAttack);
+			timeAttack.start();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					System.out.println("Time attack ticks: " + timeAttack);
+				}
+			});
+		}
+
+		if (Boolean.getBoolean("bejeweled.latency")) {
+			final LatencyHistogram latency = pipeline.getLatencyHistogram();
+			final LatencyHistogram frameTimes = gui.getFrameTimes();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					System.out.println("Input latency: " + latency);
+					if (frameTimes != null) {
+						System.out.println("Animation frame times: " + frameTimes);
+					}
+				}
+			});
+		}
 	}
-}
\ No newline at end of file
+}
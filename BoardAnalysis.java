@@ -0,0 +1,53 @@
+/**
+* BoardAnalysis.java
+* The result of analysing a board position: every valid move, the move that
+* scores the most points right away and how many points that is. Each move is
+* {row1, col1, row2, col2}, where the piece at (row1, col1) is one that forms a
+* chain when it is moved.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BoardAnalysis {
+	private final List<int[]> validMoves;
+	private final int[] bestMove;
+	private final int bestMatchCount;
+
+	public BoardAnalysis(List<int[]> validMoves, int[] bestMove, int bestMatchCount) {
+		this.validMoves = validMoves;
+		this.bestMove = bestMove;
+		this.bestMatchCount = bestMatchCount;
+	}
+
+	public boolean hasValidMove() {
+		return !validMoves.isEmpty();
+	}
+
+	/**
+	* Returns a copy of the list of valid moves. Analyses are cached and shared,
+	* so the moves are copied to keep callers from changing them.
+	*/
+	public List<int[]> getValidMoves() {
+		List<int[]> moves = new ArrayList<int[]>(validMoves.size());
+		for (int[] move : validMoves) {
+			moves.add(move.clone());
+		}
+		return moves;
+	}
+
+	public int getNumValidMoves() {
+		return validMoves.size();
+	}
+
+	/**
+	* Returns the move that scores the most points, or null if there are no valid moves.
+	*/
+	public int[] getBestMove() {
+		return bestMove == null ? null : bestMove.clone();
+	}
+
+	public int getBestMatchCount() {
+		return bestMatchCount;
+	}
+}
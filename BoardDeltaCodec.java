@@ -0,0 +1,119 @@
+/**
+* BoardDeltaCodec.java
+* The binary format used to send a game to spectators. Every message starts
+* with its length (an int, not counting itself), a type byte and a sequence
+* number (a long), followed by:
+*
+*  KEYFRAME: rows (short), columns (short), score (int), moves left (int) and
+*            one byte per slot, row by row.
+*  DELTA:    score (int), moves left (int), the number of changed slots
+*            (varint) and for each changed slot, in increasing order, the
+*            distance to the previous changed slot (varint) and its new piece.
+*
+* Pieces are sent as piece + 1, so EMPTY is 0. A delta applies to the state
+* with the previous sequence number; a spectator that missed a message waits
+* for the next keyframe.
+*/
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+public class BoardDeltaCodec {
+	public static final byte KEYFRAME = 1;
+	public static final byte DELTA = 2;
+
+	private static final int HEADER_SIZE = 4 + 1 + 8;
+
+	/**
+	* encodeKeyframe
+	* Returns a message holding the whole board. pieces holds the slots row by row.
+	*/
+	public static ByteBuffer encodeKeyframe(long sequence, int numRow, int numCol, int[] pieces, int score, int movesLeft) {
+		int bodySize = 2 + 2 + 4 + 4 + pieces.length;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		buffer.putInt(bodySize + 1 + 8).put(KEYFRAME).putLong(sequence);
+		buffer.putShort((short) numRow).putShort((short) numCol).putInt(score).putInt(movesLeft);
+		for (int piece : pieces) {
+			buffer.put((byte) (piece + 1));
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	* encodeDelta
+	* Returns a message holding the slots set in changed.
+	*/
+	public static ByteBuffer encodeDelta(long sequence, int[] pieces, BitSet changed, int score, int movesLeft) {
+		// each changed slot takes at most 5 bytes for its distance and 1 for its piece
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 + 4 + 5 + changed.cardinality() * 6);
+		buffer.position(4);
+		buffer.put(DELTA).putLong(sequence).putInt(score).putInt(movesLeft);
+		putVarint(buffer, changed.cardinality());
+		int previous = 0;
+		for (int slot = changed.nextSetBit(0); slot >= 0; slot = changed.nextSetBit(slot + 1)) {
+			putVarint(buffer, slot - previous);
+			buffer.put((byte) (pieces[slot] + 1));
+			previous = slot;
+		}
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	* apply
+	* Applies one message (without its length prefix) to the board. Returns
+	* false if it is a delta that does not follow on from the board's current
+	* state, in which case the board is left unchanged.
+	*/
+	public static boolean apply(ByteBuffer message, SpectatorBoard board) {
+		byte type = message.get();
+		long sequence = message.getLong();
+		if (type == KEYFRAME) {
+			int numRow = message.getShort();
+			int numCol = message.getShort();
+			int score = message.getInt();
+			int movesLeft = message.getInt();
+			int[] pieces = new int[numRow * numCol];
+			for (int slot = 0; slot < pieces.length; slot++) {
+				pieces[slot] = (message.get() & 0xFF) - 1;
+			}
+			board.reset(sequence, numRow, numCol, pieces, score, movesLeft);
+			return true;
+		}
+		if (!board.hasKeyframe() || sequence != board.getSequence() + 1) {
+			return false;
+		}
+		int score = message.getInt();
+		int movesLeft = message.getInt();
+		int count = getVarint(message);
+		int slot = 0;
+		for (int i = 0; i < count; i++) {
+			slot += getVarint(message);
+			board.setPiece(slot, (message.get() & 0xFF) - 1);
+		}
+		board.update(sequence, score, movesLeft);
+		return true;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,35 @@
+/**
+* BoardView.java
+* A read-only view of a game, given to bots so they can look at the board
+* without being able to change it.
+*/
+
+public interface BoardView {
+	int getNumRow();
+
+	int getNumCol();
+
+	int getNumPieceStyle();
+
+	/**
+	* Returns the piece at the given slot.
+	*/
+	int getPiece(int row, int col);
+
+	int getScore();
+
+	int getMovesLeft();
+
+	/**
+	* Returns the valid moves on the board and the best of them.
+	*/
+	BoardAnalysis analyze();
+
+	/**
+	* Plays the given swap on a separate copy of the game and returns a view
+	* of the copy once its cascade is over. The copy's refills are random
+	* numbers from the given seed, not the ones the real game will get, so
+	* bots can't see the future.
+	*/
+	BoardView simulate(long seed, int row1, int col1, int row2, int col2);
+}
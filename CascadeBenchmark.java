@@ -0,0 +1,56 @@
+/**
+* CascadeBenchmark.java
+* Times how long it takes to set up a large board, which fills it and then
+* resolves the cascade that removes every chain from it, with the original
+* code, with a sequential CascadeResolver and with the parallel one on all
+* processors. All three start from the same seeds. Each setting is run once
+* untimed first so the JIT has compiled it, and the best of several rounds
+* is printed in milliseconds.
+*
+* Usage: java CascadeBenchmark [numRow numCol [rounds]]
+*/
+
+public class CascadeBenchmark {
+	private static final int NUMPIECESTYLE = 7;
+
+	static volatile int sink;		// keeps the results of the games alive
+
+	public static void main(String[] args) {
+		int numRow = args.length > 1 ? Integer.parseInt(args[0]) : 1000;
+		int numCol = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		String[] names = {"original", "sequential resolver", "parallel resolver"};
+		CascadeResolver[] resolvers = {null, CascadeResolver.sequential(), new CascadeResolver()};
+		for (CascadeResolver resolver : resolvers) {
+			time(resolver, numRow, numCol, 1);
+		}
+
+		System.out.printf("%d x %d board, %d processors, best of %d rounds%n", numRow, numCol,
+			Runtime.getRuntime().availableProcessors(), rounds);
+		double original = 0;
+		for (int i = 0; i < resolvers.length; i++) {
+			double millis = time(resolvers[i], numRow, numCol, rounds);
+			if (i == 0) {
+				original = millis;
+			}
+			System.out.printf("%-20s %10.1f ms %8.2fx%n", names[i], millis, original / millis);
+		}
+	}
+
+	/**
+	* time
+	* Sets up a game with the given resolver (or none) the given number of
+	* times and returns the fastest in milliseconds.
+	*/
+	private static double time(CascadeResolver resolver, int numRow, int numCol, int rounds) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			Bejeweled game = new Bejeweled(new HeadlessDisplay(), numRow, numCol, NUMPIECESTYLE, new RefillSequence(round), resolver);
+			best = Math.min(best, System.nanoTime() - start);
+			sink += game.score;
+		}
+		return best / 1e6;
+	}
+}
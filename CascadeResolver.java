@@ -0,0 +1,403 @@
+/**
+* CascadeResolver.java
+* Resolves cascades on very large boards on all processors. A game that has a
+* resolver uses it instead of the original code to remove the chains left
+* after a swap and to refill the board, which is where most of the time goes
+* once a board has millions of slots.
+*
+* Each pass is split into fork/join tasks that write disjoint parts of the
+* board:
+*
+*  - chains are found in tiles of stripeWidth columns by bandHeight rows. A
+*    slot is in a chain if it and the two slots on either side of it (in a row
+*    or in a column) make a run of three, so a tile reads up to two slots past
+*    its edges but only marks its own slots, and runs that cross a tile edge
+*    are found from both sides.
+*  - marked slots are emptied, and columns are refilled, in stripes of whole
+*    columns. Each column draws its new pieces from its own stream of the
+*    game's RefillSequence, so the board is the same however the columns are
+*    split between threads, and the same as with the original fillColumn.
+*
+* Every task returns the change it made to the Zobrist hash of the board
+* (the XOR of the keys of the slots it changed), which are combined once the
+* pass is done. The display is updated afterwards on the calling thread.
+*
+* Unlike the original findExistingChains, which empties each chain as soon as
+* it finds it and can miss a chain that crosses one it already emptied, the
+* resolver empties all chains at once. Each pass scores one point per emptied
+* slot.
+*/
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class CascadeResolver {
+	private static final int DEFAULT_STRIPE_WIDTH = 64;		// columns per task
+	private static final int DEFAULT_BAND_HEIGHT = 256;		// rows per task when looking for chains
+	private static final int EMPTY = -1;
+
+	private static final int MARK = 0;		// mark the slots that are in chains
+	private static final int CLEAR = 1;		// empty the marked slots
+	private static final int FILL = 2;		// let pieces fall and refill the columns
+
+	private final ForkJoinPool pool;	// null to run on the calling thread
+	private final int stripeWidth;
+	private final int bandHeight;
+
+	/**
+	* Creates a resolver that runs on the common fork/join pool.
+	*/
+	public CascadeResolver() {
+		this(ForkJoinPool.commonPool(), DEFAULT_STRIPE_WIDTH, DEFAULT_BAND_HEIGHT);
+	}
+
+	/**
+	* Creates a resolver that runs on the given pool (or on the calling thread
+	* if pool is null) and splits the board into tasks of at most stripeWidth
+	* columns and bandHeight rows.
+	*/
+	public CascadeResolver(ForkJoinPool pool, int stripeWidth, int bandHeight) {
+		this.pool = pool;
+		this.stripeWidth = stripeWidth;
+		this.bandHeight = bandHeight;
+	}
+
+	/**
+	* sequential
+	* Returns a resolver that applies the same rules in a single task on the
+	* calling thread.
+	*/
+	public static CascadeResolver sequential() {
+		return new CascadeResolver(null, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	* fromProperties
+	* Returns the resolver a game is set up with: one that runs on all
+	* processors if the system property bejeweled.parallel is true, and null
+	* (the original code) otherwise.
+	*/
+	public static CascadeResolver fromProperties() {
+		return Boolean.getBoolean("bejeweled.parallel") ? new CascadeResolver() : null;
+	}
+
+	/**
+	* clearChains
+	* Empties every run of three or more equal pieces on the game's board and
+	* returns the number of slots emptied.
+	*/
+	int clearChains(Bejeweled game) {
+		int numRow = game.NUMROW;
+		int numCol = game.NUMCOL;
+		if (game.chainMask == null) {
+			game.chainMask = new boolean[numRow][numCol];
+		}
+
+		// a chain that is new since the last pass has a slot that changed, so
+		// it lies within two slots of the rows that changed
+		int[] limit = new int[numCol];
+		int[] changed = knownChanges(game);
+		for (int col = 0; col < numCol; col++) {
+			if (changed == null) {
+				limit[col] = numRow - 1;
+				continue;
+			}
+			int lowest = changed[col] + 2;
+			for (int near = Math.max(0, col - 2); near <= Math.min(numCol - 1, col + 2); near++) {
+				lowest = Math.max(lowest, changed[near]);
+			}
+			limit[col] = Math.min(numRow - 1, lowest);
+		}
+
+		int numMarked = (int) run(new PassTask(MARK, game, limit, null, 0, numCol, 0, numRow));
+		int[] lowestChanged = new int[numCol];
+		if (numMarked > 0) {
+			game.boardHash ^= run(new PassTask(CLEAR, game, limit, lowestChanged, 0, numCol, 0, numRow));
+			game.numPiecesCleared += numMarked;
+		} else {
+			Arrays.fill(lowestChanged, -1);
+		}
+		// every chain has been found, so from now on only the emptied slots matter
+		rememberChanges(game, lowestChanged);
+
+		if (numMarked > 0 && showsChanges(game)) {
+			for (int col = 0; col < numCol; col++) {
+				for (int row = 0; row <= lowestChanged[col]; row++) {
+					if (game.board[row][col] == EMPTY) {
+						game.gui.highlightSlot(row, col, game.CHAIN_COLOUR);
+					}
+				}
+			}
+		}
+		return numMarked;
+	}
+
+	/**
+	* fillEmptySlots
+	* Has the game's pieces fall into the empty slots below them and refills
+	* the columns from the top, exactly like calling the game's fillColumn on
+	* every column.
+	*/
+	void fillEmptySlots(Bejeweled game) {
+		int numRow = game.NUMROW;
+		int numCol = game.NUMCOL;
+		boolean showChanges = showsChanges(game);
+		if (showChanges && game.chainMask == null) {
+			game.chainMask = new boolean[numRow][numCol];
+		}
+		game.refill.ensureColumns(numCol);
+
+		// right after clearChains, the empty slots are no lower than the rows it emptied
+		int[] changed = knownChanges(game);
+		int[] limit = new int[numCol];
+		for (int col = 0; col < numCol; col++) {
+			limit[col] = changed != null ? changed[col] : numRow - 1;
+		}
+		int[] lowestChanged = new int[numCol];
+		PassTask fill = new PassTask(FILL, game, limit, lowestChanged, 0, numCol, 0, numRow);
+		fill.marksFilled = showChanges;
+		game.boardHash ^= run(fill);
+		if (changed != null) {
+			rememberChanges(game, lowestChanged);
+		} else {
+			game.cascadeRows = null;
+		}
+
+		if (showChanges) {
+			// the fill marked the slots that were empty, so only those are unhighlighted
+			for (int col = 0; col < numCol; col++) {
+				for (int row = 0; row <= lowestChanged[col]; row++) {
+					if (game.chainMask[row][col]) {
+						game.chainMask[row][col] = false;
+						game.gui.unhighlightSlot(row, col);
+						game.gui.showFall(row, col);
+					}
+				}
+				for (int row = 0; row <= lowestChanged[col]; row++) {
+					game.gui.setPiece(row, col, game.board[row][col]);
+				}
+			}
+		}
+	}
+
+	/**
+	* knownChanges
+	* Returns the lowest row in each column that the resolver's last pass
+	* changed, or null if the board has been changed by something else since
+	* (or this game has not had a pass yet), in which case the whole board
+	* must be looked at.
+	*/
+	private int[] knownChanges(Bejeweled game) {
+		if (game.cascadeRows != null && game.cascadeHash == game.boardHash) {
+			return game.cascadeRows;
+		}
+		return null;
+	}
+
+	private void rememberChanges(Bejeweled game, int[] lowestChanged) {
+		game.cascadeRows = lowestChanged;
+		game.cascadeHash = game.boardHash;
+	}
+
+	private long run(PassTask task) {
+		return pool != null ? pool.invoke(task) : task.invoke();
+	}
+
+	private boolean showsChanges(Bejeweled game) {
+		return game.gui.showsBoard();
+	}
+
+	/**
+	* One pass over the columns [fromCol, toCol) and rows [fromRow, toRow) of a
+	* game's board, looking no lower than limit[col] in each column. MARK
+	* returns the number of slots marked, CLEAR and FILL the change to the
+	* board hash. CLEAR and FILL always cover whole columns and record the
+	* lowest row they changed in each column in lowestChanged (-1 if none).
+	* If marksFilled is set, FILL marks the slots that were empty.
+	*/
+	private class PassTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final int pass;
+		private final Bejeweled game;
+		private final int[] limit;
+		private final int[] lowestChanged;
+		private final int fromCol, toCol, fromRow, toRow;
+		boolean marksFilled;
+
+		PassTask(int pass, Bejeweled game, int[] limit, int[] lowestChanged, int fromCol, int toCol, int fromRow, int toRow) {
+			this.pass = pass;
+			this.game = game;
+			this.limit = limit;
+			this.lowestChanged = lowestChanged;
+			this.fromCol = fromCol;
+			this.toCol = toCol;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		private PassTask subtask(int fromCol, int toCol, int fromRow, int toRow) {
+			PassTask task = new PassTask(pass, game, limit, lowestChanged, fromCol, toCol, fromRow, toRow);
+			task.marksFilled = marksFilled;
+			return task;
+		}
+
+		protected Long compute() {
+			if (toCol - fromCol > stripeWidth) {
+				int middle = (fromCol + toCol) >>> 1;
+				return split(subtask(fromCol, middle, fromRow, toRow), subtask(middle, toCol, fromRow, toRow));
+			}
+			if (pass == MARK && toRow - fromRow > bandHeight) {
+				int middle = (fromRow + toRow) >>> 1;
+				return split(subtask(fromCol, toCol, fromRow, middle), subtask(fromCol, toCol, middle, toRow));
+			}
+
+			if (pass == MARK) {
+				return markTile();
+			} else if (pass == CLEAR) {
+				return clearStripe();
+			}
+			return fillStripe();
+		}
+
+		private long split(PassTask first, PassTask second) {
+			invokeAll(first, second);
+			if (pass == MARK) {
+				return first.join() + second.join();
+			}
+			return first.join() ^ second.join();
+		}
+
+		/**
+		* markTile
+		* Marks the slots of the tile that are the first, middle or last slot
+		* of three equal pieces in a row or a column.
+		*/
+		private long markTile() {
+			int[][] board = game.board;
+			boolean[][] marked = game.chainMask;
+			int numRow = game.NUMROW;
+			int numCol = game.NUMCOL;
+			int lastRow = -1;
+			for (int col = fromCol; col < toCol; col++) {
+				lastRow = Math.max(lastRow, limit[col]);
+			}
+			long numMarked = 0;
+			for (int row = fromRow; row < toRow && row <= lastRow; row++) {
+				int[] line = board[row];
+				int[] above = row >= 1 ? board[row - 1] : null;
+				int[] below = row + 1 < numRow ? board[row + 1] : null;
+				for (int col = fromCol; col < toCol; col++) {
+					int piece = line[col];
+					if (piece == EMPTY || row > limit[col]) {
+						continue;
+					}
+					boolean left1 = col >= 1 && line[col - 1] == piece;
+					boolean right1 = col + 1 < numCol && line[col + 1] == piece;
+					boolean above1 = above != null && above[col] == piece;
+					boolean below1 = below != null && below[col] == piece;
+					if ((left1 && (right1 || (col >= 2 && line[col - 2] == piece)))
+							|| (right1 && col + 2 < numCol && line[col + 2] == piece)
+							|| (above1 && (below1 || (row >= 2 && board[row - 2][col] == piece)))
+							|| (below1 && row + 2 < numRow && board[row + 2][col] == piece)) {
+						marked[row][col] = true;
+						numMarked++;
+					}
+				}
+			}
+			return numMarked;
+		}
+
+		private long clearStripe() {
+			int[][] board = game.board;
+			boolean[][] marked = game.chainMask;
+			ZobristKeys keys = game.keys;
+			long hashChange = 0;
+			int lastRow = -1;
+			for (int col = fromCol; col < toCol; col++) {
+				lowestChanged[col] = -1;
+				lastRow = Math.max(lastRow, limit[col]);
+			}
+			for (int row = 0; row <= lastRow; row++) {
+				for (int col = fromCol; col < toCol; col++) {
+					if (marked[row][col]) {
+						marked[row][col] = false;
+						hashChange ^= keys.key(row, col, board[row][col]) ^ keys.key(row, col, EMPTY);
+						board[row][col] = EMPTY;
+						lowestChanged[col] = row;
+					}
+				}
+			}
+			return hashChange;
+		}
+
+		/**
+		* fillStripe
+		* Same result as calling Bejeweled.fillColumn on each column of the
+		* stripe: in every column the pieces move down over the empty slots,
+		* then the k empty slots left at the top get k new pieces. The
+		* original code puts each new piece at the top and pushes the earlier
+		* ones down, so the first piece drawn ends up lowest. The stripe is
+		* walked a row at a time, bottom up, which reads the board in the order
+		* it is stored; each column still draws its pieces in the same order.
+		*/
+		private long fillStripe() {
+			int[][] board = game.board;
+			boolean[][] marked = game.chainMask;
+			ZobristKeys keys = game.keys;
+			int width = toCol - fromCol;
+			int[] next = new int[width];		// the lowest slot of each column not filled yet
+			int lastRow = -1;
+			for (int col = fromCol; col < toCol; col++) {
+				lowestChanged[col] = -1;
+				lastRow = Math.max(lastRow, limit[col]);
+			}
+
+			// move the pieces down, starting from the lowest empty slot of each column
+			long hashChange = 0;
+			int lastChangedRow = -1;
+			for (int row = lastRow; row >= 0; row--) {
+				int[] line = board[row];
+				for (int col = fromCol; col < toCol; col++) {
+					int piece = line[col];
+					if (lowestChanged[col] < 0) {
+						if (piece != EMPTY || row > limit[col]) {
+							continue;
+						}
+						lowestChanged[col] = row;
+						next[col - fromCol] = row;
+						lastChangedRow = Math.max(lastChangedRow, row);
+					}
+					hashChange ^= keys.key(row, col, piece);
+					if (piece == EMPTY) {
+						if (marksFilled) {
+							marked[row][col] = true;
+						}
+					} else {
+						board[next[col - fromCol]--][col] = piece;
+					}
+				}
+			}
+
+			// draw the new pieces, lowest first in each column
+			PieceDistribution pieces = game.distribution;
+			RefillSequence refill = game.refill;
+			for (int row = lastChangedRow; row >= 0; row--) {
+				int[] line = board[row];
+				for (int col = fromCol; col < toCol; col++) {
+					if (row > lowestChanged[col]) {
+						continue;
+					}
+					if (row <= next[col - fromCol]) {
+						// the pieces below are already in place, so a new piece can avoid completing a chain with them
+						long bits = refill.nextBits(col);
+						line[col] = row + 2 < board.length ? pieces.sample(bits, board[row+1][col], board[row+2][col]) : pieces.sample(bits);
+					}
+					hashChange ^= keys.key(row, col, line[col]);
+				}
+			}
+			return hashChange;
+		}
+	}
+}
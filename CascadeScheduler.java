@@ -0,0 +1,41 @@
+/**
+* CascadeScheduler.java
+* A queue of small pieces of work (filling one column, removing the chains on
+* the board) that is run a little at a time. Each call to runFor runs steps in
+* order until the queue is empty or the time budget is used up, so a long
+* cascade is spread over several frames instead of freezing one.
+*/
+
+import java.util.ArrayDeque;
+
+public class CascadeScheduler {
+	private final ArrayDeque<Runnable> steps = new ArrayDeque<Runnable>();
+
+	public void add(Runnable step) {
+		steps.add(step);
+	}
+
+	public boolean isIdle() {
+		return steps.isEmpty();
+	}
+
+	public int getNumPending() {
+		return steps.size();
+	}
+
+	/**
+	* runFor
+	* Runs queued steps, including any they queue themselves, until there are
+	* none left or budgetNanos have passed. At least one step is run, so the
+	* work always makes progress. Returns the number of steps run.
+	*/
+	public int runFor(long budgetNanos) {
+		long deadline = System.nanoTime() + budgetNanos;
+		int numRun = 0;
+		while (!steps.isEmpty() && (numRun == 0 || System.nanoTime() < deadline)) {
+			steps.poll().run();
+			numRun++;
+		}
+		return numRun;
+	}
+}
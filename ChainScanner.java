@@ -0,0 +1,62 @@
+/**
+* ChainScanner.java
+* Finds runs of three or more equal pieces and swaps that would form one,
+* looking at the whole board at once instead of one piece at a time. The
+* chains found are runs of exactly the kind the game removes (MIN_CHAIN_LENGTH
+* is 3); EMPTY slots never form a chain.
+*
+* create() returns the vectorised scanner (vector/VectorChainScanner.java) when
+* it was compiled and the jdk.incubator.vector module is available, and the
+* plain ScalarChainScanner otherwise.
+*/
+
+public interface ChainScanner {
+	int SWAP_RIGHT = 1;		// markMoves flag: swapping the slot with the one to its right forms a chain
+	int SWAP_DOWN = 2;		// markMoves flag: swapping the slot with the one below it forms a chain
+
+	/**
+	* Returns true if the board has a run of three or more equal pieces in a
+	* row or a column.
+	*/
+	boolean hasChain(int[][] board);
+
+	/**
+	* Sets marked[row][col] to 1 for every slot that is part of a run of three
+	* or more equal pieces. Other entries of marked are left alone. Returns the
+	* number of entries it changed from 0 to 1.
+	*/
+	int markChains(int[][] board, int[][] marked);
+
+	/**
+	* Returns true if swapping some pair of adjacent pieces would form a run of
+	* three or more equal pieces.
+	*/
+	boolean hasPossibleMove(int[][] board);
+
+	/**
+	* Sets the SWAP_RIGHT or SWAP_DOWN flag of moves[row][col] for every swap
+	* of the slot with its right or lower neighbour that would form a run of
+	* three or more equal pieces. Other flags are left alone. Returns the number
+	* of flags set. Only exact on boards that have no chains yet.
+	*/
+	int markMoves(int[][] board, int[][] moves);
+
+	/**
+	* create
+	* Returns the fastest scanner available for boards numCol slots wide.
+	* Setting the system property bejeweled.vector to false always returns
+	* the scalar scanner.
+	*/
+	static ChainScanner create(int numCol) {
+		if (numCol >= ScalarChainScanner.VECTOR_MIN_WIDTH && !"false".equals(System.getProperty("bejeweled.vector"))) {
+			try {
+				return (ChainScanner) Class.forName("VectorChainScanner").getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				// not compiled; fall through to the scalar scanner
+			} catch (LinkageError e) {
+				// compiled, but jdk.incubator.vector is not available at run time
+			}
+		}
+		return new ScalarChainScanner();
+	}
+}
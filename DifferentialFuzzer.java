@@ -0,0 +1,636 @@
+/**
+* DifferentialFuzzer.java
+* Checks that faster versions of the game engine play exactly like the
+* original rules in ReferenceEngine. It generates random boards and random
+* sequences of moves (mostly valid ones, some invalid), plays them on the
+* reference engine and on every candidate backend, and compares the board,
+* score, moves left, whether the move was accepted, whether any move is still
+* possible, the set of valid moves and the points the best of them scores
+* after every step.
+*
+* Cases are spread over all processors. When a backend disagrees with the
+* reference, the case is shrunk (moves are dropped and the board is made
+* smaller for as long as the backends still disagree) and the smallest
+* failing case is printed, with the first slot or value that differs.
+*
+* With --self-check, the fuzzer is run on a backend with a planted bug
+* instead, to show that it still notices when a backend plays differently.
+*
+* Usage: java DifferentialFuzzer [numCases [firstSeed]]
+*        java DifferentialFuzzer --self-check [numCases]
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DifferentialFuzzer {
+	private final int NUMSTEP = 30;				// moves tried per case
+	private final double VALID_MOVE_CHANCE = 0.8;	// chance a step tries a valid move rather than a random one
+	static final double BALANCE_STRENGTH = 2;		// how strongly backends that weight their pieces balance them
+
+	/**
+	* A game engine under test.
+	*/
+	public interface Engine {
+		boolean swap(int row1, int col1, int row2, int col2);
+
+		int[][] getBoard();
+
+		int getScore();
+
+		int getMovesLeft();
+
+		boolean hasPossibleMove();
+
+		/**
+		* Returns every swap that forms a chain, as {row1, col1, row2, col2},
+		* in any order and with the two slots of each in either order.
+		*/
+		List<int[]> getValidMoves();
+
+		/**
+		* Returns the points the best valid move scores right away, or 0.
+		*/
+		int getBestMatchCount();
+	}
+
+	/**
+	* Creates engines of one kind. Engines created with the same size and seed
+	* must start from the same board as a ReferenceEngine with that size and
+	* seed. Backends that clear all chains at once, like CascadeResolver, are
+	* compared with a reference that does the same. Backends that weight their
+	* pieces draw them from weightedPieces and balance them with
+	* BALANCE_STRENGTH, and are compared with a reference that does the same.
+	*/
+	public interface Backend {
+		String getName();
+
+		boolean clearsAllChains();
+
+		boolean weightsPieces();
+
+		Engine create(int numRow, int numCol, int numPieceStyle, long seed);
+	}
+
+	/**
+	* One generated test: a board size, a seed and the moves to play.
+	*/
+	static class Case {
+		final int numRow, numCol, numPieceStyle;
+		final long seed;
+		final List<int[]> moves;
+
+		Case(int numRow, int numCol, int numPieceStyle, long seed, List<int[]> moves) {
+			this.numRow = numRow;
+			this.numCol = numCol;
+			this.numPieceStyle = numPieceStyle;
+			this.seed = seed;
+			this.moves = moves;
+		}
+	}
+
+	/**
+	* Where a backend first disagreed with the reference.
+	*/
+	static class Divergence {
+		final Backend backend;
+		final Case testCase;
+		final int step;				// index of the move after which they disagreed; -1 for the starting board
+		final String field;
+		final String expected;
+		final String actual;
+		final int[][] expectedBoard;
+		final int[][] actualBoard;
+
+		Divergence(Backend backend, Case testCase, int step, String field, String expected, String actual, int[][] expectedBoard, int[][] actualBoard) {
+			this.backend = backend;
+			this.testCase = testCase;
+			this.step = step;
+			this.field = field;
+			this.expected = expected;
+			this.actual = actual;
+			this.expectedBoard = expectedBoard;
+			this.actualBoard = actualBoard;
+		}
+	}
+
+	private final List<Backend> backends;
+
+	public DifferentialFuzzer(List<Backend> backends) {
+		this.backends = backends;
+	}
+
+	/**
+	* run
+	* Tries numCases cases, generated from the seeds firstSeed, firstSeed + 1,
+	* and so on, on every backend. Stops early at the first disagreement and
+	* returns a report of the shrunk case, or returns null if all backends
+	* agreed with the reference on every case.
+	*/
+	public String run(final long numCases, final long firstSeed) throws InterruptedException {
+		final AtomicLong nextCase = new AtomicLong();
+		final AtomicReference<Divergence> failure = new AtomicReference<Divergence>();
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			pool.execute(new Runnable() {
+				public void run() {
+					long index;
+					while (failure.get() == null && (index = nextCase.getAndIncrement()) < numCases) {
+						Divergence divergence = generateAndCheck(firstSeed + index);
+						if (divergence != null) {
+							failure.compareAndSet(null, divergence);
+							return;
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		Divergence found = failure.get();
+		if (found == null) {
+			return null;
+		}
+		return report(shrink(found));
+	}
+
+	/**
+	* generateAndCheck
+	* Generates a case from the given seed while playing it, and returns the
+	* first disagreement between the reference and a backend, or null.
+	*/
+	Divergence generateAndCheck(long caseSeed) {
+		Random random = new Random(caseSeed);
+		int numRow = 3 + random.nextInt(8);
+		// now and then a board wide enough for the vector scanner
+		int numCol = random.nextInt(10) == 0 ? 16 + random.nextInt(25) : 3 + random.nextInt(8);
+		int numPieceStyle = 3 + random.nextInt(5);
+		Case testCase = new Case(numRow, numCol, numPieceStyle, random.nextLong(), new ArrayList<int[]>());
+		return check(testCase, backends, random);
+	}
+
+	/**
+	* check
+	* Plays the case on the reference and the given backends side by side and
+	* returns the first disagreement, or null. If moveSource is given, the
+	* moves are chosen with it and added to the case; otherwise the case's
+	* moves are replayed.
+	*/
+	Divergence check(Case testCase, List<Backend> candidates, Random moveSource) {
+		// one reference for each rule used by the candidates (see ruleOf)
+		ReferenceEngine[] references = new ReferenceEngine[4];
+		Engine[] engines = new Engine[candidates.size()];
+		ReferenceEngine moveReference = null;
+		for (int i = 0; i < engines.length; i++) {
+			int rule = ruleOf(candidates.get(i));
+			if (references[rule] == null) {
+				references[rule] = createReference(testCase, candidates.get(i));
+			}
+			if (moveReference == null) {
+				moveReference = references[rule];
+			}
+			engines[i] = candidates.get(i).create(testCase.numRow, testCase.numCol, testCase.numPieceStyle, testCase.seed);
+		}
+
+		Divergence divergence = compareAll(testCase, -1, references, candidates, engines);
+		int numStep = moveSource != null ? NUMSTEP : testCase.moves.size();
+		boolean[] expected = new boolean[references.length];
+		for (int step = 0; divergence == null && step < numStep; step++) {
+			int[] move;
+			if (moveSource != null) {
+				move = chooseMove(moveReference, testCase, moveSource);
+				testCase.moves.add(move);
+			} else {
+				move = testCase.moves.get(step);
+			}
+			for (int rule = 0; rule < references.length; rule++) {
+				if (references[rule] != null) {
+					expected[rule] = references[rule].swap(move[0], move[1], move[2], move[3]);
+				}
+			}
+			for (int i = 0; i < engines.length; i++) {
+				int rule = ruleOf(candidates.get(i));
+				boolean actual = engines[i].swap(move[0], move[1], move[2], move[3]);
+				if (expected[rule] != actual) {
+					return new Divergence(candidates.get(i), testCase, step, "move accepted", "" + expected[rule], "" + actual,
+						references[rule].getBoard(), engines[i].getBoard());
+				}
+			}
+			divergence = compareAll(testCase, step, references, candidates, engines);
+		}
+		return divergence;
+	}
+
+	private Divergence compareAll(Case testCase, int step, ReferenceEngine[] references, List<Backend> candidates, Engine[] engines) {
+		for (int i = 0; i < engines.length; i++) {
+			ReferenceEngine reference = references[ruleOf(candidates.get(i))];
+			Divergence divergence = compare(candidates.get(i), testCase, step, reference, engines[i]);
+			if (divergence != null) {
+				return divergence;
+			}
+		}
+		return null;
+	}
+
+	/**
+	* ruleOf
+	* Returns the index of the reference the backend is compared with: bit 0
+	* is set if it clears all chains at once, bit 1 if it weights its pieces.
+	*/
+	private static int ruleOf(Backend backend) {
+		return (backend.clearsAllChains() ? 1 : 0) | (backend.weightsPieces() ? 2 : 0);
+	}
+
+	private static ReferenceEngine createReference(Case testCase, Backend backend) {
+		if (!backend.weightsPieces()) {
+			return new ReferenceEngine(testCase.numRow, testCase.numCol, testCase.numPieceStyle, testCase.seed, backend.clearsAllChains());
+		}
+		ReferenceEngine reference = new ReferenceEngine(testCase.numRow, testCase.numCol, testCase.numPieceStyle, testCase.seed,
+			backend.clearsAllChains(), weightedPieces(testCase.numPieceStyle));
+		reference.setBalancing(BALANCE_STRENGTH);
+		return reference;
+	}
+
+	/**
+	* weightedPieces
+	* Returns the distribution backends that weight their pieces start from:
+	* each piece style is twice as likely as the next one, and pieces that
+	* would complete a chain in their column are held back strongly.
+	*/
+	static PieceDistribution weightedPieces(int numPieceStyle) {
+		double[] weights = new double[numPieceStyle];
+		for (int piece = 0; piece < numPieceStyle; piece++) {
+			weights[piece] = Math.pow(0.5, piece);
+		}
+		return new PieceDistribution(weights, 0.1);
+	}
+
+	private int[] chooseMove(ReferenceEngine reference, Case testCase, Random random) {
+		if (random.nextDouble() < VALID_MOVE_CHANCE) {
+			List<int[]> moves = reference.validMoves();
+			if (!moves.isEmpty()) {
+				return moves.get(random.nextInt(moves.size()));
+			}
+		}
+		int row = random.nextInt(testCase.numRow);
+		int col = random.nextInt(testCase.numCol);
+		if (random.nextBoolean()) {
+			return new int[] {row, col, row + random.nextInt(3) - 1, col};
+		}
+		return new int[] {row, col, row, col + random.nextInt(3) - 1};
+	}
+
+	private Divergence compare(Backend backend, Case testCase, int step, ReferenceEngine reference, Engine candidate) {
+		int[][] expectedBoard = reference.getBoard();
+		int[][] actualBoard = candidate.getBoard();
+		for (int row = 0; row < testCase.numRow; row++) {
+			for (int col = 0; col < testCase.numCol; col++) {
+				if (expectedBoard[row][col] != actualBoard[row][col]) {
+					return new Divergence(backend, testCase, step, "board[" + row + "][" + col + "]",
+						"" + expectedBoard[row][col], "" + actualBoard[row][col], expectedBoard, actualBoard);
+				}
+			}
+		}
+		if (reference.getScore() != candidate.getScore()) {
+			return new Divergence(backend, testCase, step, "score", "" + reference.getScore(), "" + candidate.getScore(), expectedBoard, actualBoard);
+		}
+		if (reference.getMovesLeft() != candidate.getMovesLeft()) {
+			return new Divergence(backend, testCase, step, "moves left", "" + reference.getMovesLeft(), "" + candidate.getMovesLeft(), expectedBoard, actualBoard);
+		}
+		boolean expectedMove = reference.hasPossibleMove();
+		boolean actualMove = candidate.hasPossibleMove();
+		if (expectedMove != actualMove) {
+			return new Divergence(backend, testCase, step, "possible move", "" + expectedMove, "" + actualMove, expectedBoard, actualBoard);
+		}
+		TreeSet<String> expectedMoves = moveSet(reference.getValidMoves());
+		TreeSet<String> actualMoves = moveSet(candidate.getValidMoves());
+		for (String move : expectedMoves) {
+			if (!actualMoves.contains(move)) {
+				return new Divergence(backend, testCase, step, "valid move " + move, "listed", "missing", expectedBoard, actualBoard);
+			}
+		}
+		for (String move : actualMoves) {
+			if (!expectedMoves.contains(move)) {
+				return new Divergence(backend, testCase, step, "valid move " + move, "missing", "listed", expectedBoard, actualBoard);
+			}
+		}
+		if (reference.getBestMatchCount() != candidate.getBestMatchCount()) {
+			return new Divergence(backend, testCase, step, "best move points", "" + reference.getBestMatchCount(), "" + candidate.getBestMatchCount(),
+				expectedBoard, actualBoard);
+		}
+		return null;
+	}
+
+	/**
+	* moveSet
+	* Returns the moves as text, each with its upper left slot first, so two
+	* lists of the same moves give equal sets.
+	*/
+	private static TreeSet<String> moveSet(List<int[]> moves) {
+		TreeSet<String> set = new TreeSet<String>();
+		for (int[] move : moves) {
+			boolean swapped = move[2] < move[0] || move[3] < move[1];
+			int row1 = swapped ? move[2] : move[0];
+			int col1 = swapped ? move[3] : move[1];
+			int row2 = swapped ? move[0] : move[2];
+			int col2 = swapped ? move[1] : move[3];
+			set.add("(" + row1 + "," + col1 + ")-(" + row2 + "," + col2 + ")");
+		}
+		return set;
+	}
+
+	/**
+	* shrink
+	* Makes the failing case as small as it can while the backend still
+	* disagrees with the reference: moves after the disagreement are cut off,
+	* then single moves are dropped and the board is made smaller, until none
+	* of these changes keeps the case failing.
+	*/
+	Divergence shrink(Divergence divergence) {
+		List<Backend> backend = new ArrayList<Backend>();
+		backend.add(divergence.backend);
+		Case smallest = divergence.testCase;
+		List<int[]> moves = new ArrayList<int[]>(smallest.moves.subList(0, divergence.step + 1));
+		smallest = new Case(smallest.numRow, smallest.numCol, smallest.numPieceStyle, smallest.seed, moves);
+		divergence = check(smallest, backend, null);
+
+		boolean shrunk = true;
+		while (shrunk) {
+			shrunk = false;
+			for (int i = smallest.moves.size() - 1; i >= 0; i--) {
+				List<int[]> fewer = new ArrayList<int[]>(smallest.moves);
+				fewer.remove(i);
+				Divergence smaller = check(new Case(smallest.numRow, smallest.numCol, smallest.numPieceStyle, smallest.seed, fewer), backend, null);
+				if (smaller != null) {
+					divergence = smaller;
+					smallest = smaller.testCase;
+					shrunk = true;
+				}
+			}
+			int[][] sizes = {
+				{smallest.numRow - 1, smallest.numCol, smallest.numPieceStyle},
+				{smallest.numRow, smallest.numCol - 1, smallest.numPieceStyle},
+				{smallest.numRow, smallest.numCol, smallest.numPieceStyle - 1},
+			};
+			for (int[] size : sizes) {
+				if (size[0] < 3 || size[1] < 3 || size[2] < 2) {
+					continue;
+				}
+				List<int[]> onBoard = new ArrayList<int[]>();
+				for (int[] move : smallest.moves) {
+					if (Math.max(move[0], move[2]) < size[0] && Math.max(move[1], move[3]) < size[1]) {
+						onBoard.add(move);
+					}
+				}
+				Divergence smaller = check(new Case(size[0], size[1], size[2], smallest.seed, onBoard), backend, null);
+				if (smaller != null) {
+					divergence = smaller;
+					smallest = smaller.testCase;
+					shrunk = true;
+					break;
+				}
+			}
+		}
+		return divergence;
+	}
+
+	private String report(Divergence divergence) {
+		Case testCase = divergence.testCase;
+		StringBuilder text = new StringBuilder();
+		text.append("Backend \"").append(divergence.backend.getName()).append("\" disagrees with the reference.\n");
+		text.append("Board: ").append(testCase.numRow).append(" rows, ").append(testCase.numCol).append(" columns, ");
+		text.append(testCase.numPieceStyle).append(" piece styles, seed ").append(testCase.seed).append('\n');
+		text.append("Moves:");
+		for (int[] move : testCase.moves.subList(0, divergence.step + 1)) {
+			text.append(" (").append(move[0]).append(",").append(move[1]).append(")-(").append(move[2]).append(",").append(move[3]).append(")");
+		}
+		if (divergence.step < 0) {
+			text.append(" none, the starting boards differ");
+		}
+		text.append('\n');
+		text.append("First difference: ").append(divergence.field).append(" expected ").append(divergence.expected);
+		text.append(" but was ").append(divergence.actual).append('\n');
+		text.append("Reference board:          Backend board:\n");
+		for (int row = 0; row < testCase.numRow; row++) {
+			text.append(formatRow(divergence.expectedBoard[row])).append("   ").append(formatRow(divergence.actualBoard[row])).append('\n');
+		}
+		return text.toString();
+	}
+
+	private static String formatRow(int[] pieces) {
+		StringBuilder text = new StringBuilder();
+		for (int piece : pieces) {
+			text.append(piece < 0 ? '.' : (char) ('A' + piece)).append(' ');
+		}
+		return text.toString();
+	}
+
+	/**
+	* An Engine that plays a Bejeweled game. If stepped is true, each move
+	* is resolved the way TimeAttackMode does it, one column and, in games
+	* without a resolver, one band of rows at a time. The bands are as narrow
+	* as TimeAttackMode allows, so chains often cross from one to the next.
+	*/
+	static class GameEngine implements Engine {
+		final Bejeweled game;
+		final boolean stepped;
+		int movesLeft;
+
+		GameEngine(Bejeweled game, boolean stepped) {
+			this.game = game;
+			this.stepped = stepped;
+			movesLeft = game.numMoveLeft;
+		}
+
+		public boolean swap(int row1, int col1, int row2, int col2) {
+			if (!stepped) {
+				return game.swap(row1, col1, row2, col2);
+			}
+			if (!game.swapWithoutCascade(row1, col1, row2, col2)) {
+				return false;
+			}
+			movesLeft--;
+			int chainLength;
+			do {
+				for (int column = 0; column < game.NUMCOL; column++) {
+					game.fillColumn(column);
+				}
+				if (game.resolver != null) {
+					chainLength = game.clearChains(false);
+				} else {
+					chainLength = 0;
+					for (int row = 0; row < game.NUMROW; row += game.MIN_CHAIN_LENGTH) {
+						chainLength += game.clearChainsInRows(row, Math.min(game.NUMROW, row + game.MIN_CHAIN_LENGTH));
+					}
+				}
+				game.scoreChainReaction(chainLength);
+			} while (chainLength != 0);
+			return true;
+		}
+
+		public int[][] getBoard() {
+			return game.copyBoard();
+		}
+
+		public int getScore() {
+			return game.score;
+		}
+
+		public int getMovesLeft() {
+			return stepped ? movesLeft : game.numMoveLeft;
+		}
+
+		public boolean hasPossibleMove() {
+			return game.hasValidMove();
+		}
+
+		public List<int[]> getValidMoves() {
+			return game.analyzeBoard().getValidMoves();
+		}
+
+		public int getBestMatchCount() {
+			return game.analyzeBoard().getBestMatchCount();
+		}
+	}
+
+	/**
+	* gameBackend
+	* Returns a backend playing Bejeweled games that use the given chain scanner
+	* (or the default one if null) and the given cascade resolver (or none),
+	* and, if weighted is true, weighted and balanced pieces.
+	*/
+	static Backend gameBackend(final String name, final ChainScanner scanner, final boolean stepped, final CascadeResolver resolver, final boolean weighted) {
+		return new Backend() {
+			public String getName() {
+				return name;
+			}
+
+			public boolean clearsAllChains() {
+				return resolver != null;
+			}
+
+			public boolean weightsPieces() {
+				return weighted;
+			}
+
+			public Engine create(int numRow, int numCol, int numPieceStyle, long seed) {
+				PieceDistribution pieces = weighted ? weightedPieces(numPieceStyle) : PieceDistribution.uniform(numPieceStyle);
+				Bejeweled game = new Bejeweled(new HeadlessDisplay(), numRow, numCol, numPieceStyle, new RefillSequence(seed), resolver, pieces);
+				if (weighted) {
+					game.setBalancing(BALANCE_STRENGTH);
+				}
+				if (scanner != null) {
+					game.scanner = scanner;
+				}
+				return new GameEngine(game, stepped);
+			}
+		};
+	}
+
+	/**
+	* defaultBackends
+	* Returns every backend in this tree: the game as it is set up by default,
+	* with each chain scanner, with stepped cascades, and with cascade
+	* resolvers, and with weighted pieces. The parallel resolver splits even
+	* small boards into stripes and bands two slots wide, so every chain
+	* crosses a task boundary.
+	*/
+	static List<Backend> defaultBackends() {
+		List<Backend> backends = new ArrayList<Backend>();
+		backends.add(gameBackend("game", null, false, null, false));
+		backends.add(gameBackend("game, scalar scanner", new ScalarChainScanner(), false, null, false));
+		try {
+			ChainScanner vector = (ChainScanner) Class.forName("VectorChainScanner").getDeclaredConstructor().newInstance();
+			backends.add(gameBackend("game, vector scanner", vector, false, null, false));
+		} catch (Exception e) {
+			System.out.println("VectorChainScanner not available; skipping it.");
+		} catch (LinkageError e) {
+			System.out.println("jdk.incubator.vector not available; skipping VectorChainScanner.");
+		}
+		backends.add(gameBackend("game, stepped cascades", null, true, null, false));
+		CascadeResolver parallel = new CascadeResolver(ForkJoinPool.commonPool(), 2, 2);
+		backends.add(gameBackend("game, sequential resolver", null, false, CascadeResolver.sequential(), false));
+		backends.add(gameBackend("game, parallel resolver", null, false, parallel, false));
+		backends.add(gameBackend("game, parallel resolver, stepped cascades", null, true, parallel, false));
+		backends.add(gameBackend("game, weighted pieces", null, false, null, true));
+		backends.add(gameBackend("game, weighted pieces, stepped cascades", null, true, null, true));
+		backends.add(gameBackend("game, parallel resolver, weighted pieces", null, false, parallel, true));
+		return backends;
+	}
+
+	/**
+	* brokenScanner
+	* Returns a scalar scanner with a planted bug: markChains never marks the
+	* last column, as if its loop stopped one column short.
+	*/
+	static ChainScanner brokenScanner() {
+		return new ScalarChainScanner() {
+			public int markChains(int[][] board, int[][] marked) {
+				int last = board[0].length - 1;
+				boolean[] wasMarked = new boolean[board.length];
+				for (int row = 0; row < board.length; row++) {
+					wasMarked[row] = marked[row][last] != 0;
+				}
+				int changed = super.markChains(board, marked);
+				for (int row = 0; row < board.length; row++) {
+					if (!wasMarked[row] && marked[row][last] != 0) {
+						marked[row][last] = 0;
+						changed--;
+					}
+				}
+				return changed;
+			}
+		};
+	}
+
+	/**
+	* selfCheck
+	* Fuzzes a backend that uses brokenScanner and returns the report of the
+	* disagreement found, or null if the fuzzer missed the bug.
+	*/
+	static String selfCheck(long numCases) throws InterruptedException {
+		List<Backend> broken = new ArrayList<Backend>();
+		broken.add(gameBackend("game, scanner that skips the last column", brokenScanner(), false, null, false));
+		return new DifferentialFuzzer(broken).run(numCases, 0);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0 && args[0].equals("--self-check")) {
+			long numCases = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+			String failure = selfCheck(numCases);
+			if (failure == null) {
+				System.out.println("Self-check failed: a backend with a planted bug agreed with the reference on " + numCases + " cases.");
+				System.exit(1);
+			}
+			System.out.println(failure);
+			System.out.println("Self-check passed: the planted bug was caught.");
+			return;
+		}
+
+		long numCases = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+		long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+		List<Backend> backends = defaultBackends();
+		long start = System.nanoTime();
+		String failure = new DifferentialFuzzer(backends).run(numCases, firstSeed);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if (failure != null) {
+			System.out.println(failure);
+			System.exit(1);
+		}
+		System.out.printf("All %d backends agreed with the reference on %d cases (%.1f s, %.0f cases/s).%n",
+			backends.size(), numCases, seconds, numCases / seconds);
+	}
+}
@@ -0,0 +1,135 @@
+/**
+* EventThreadDisplay.java
+* A display that passes every call on to a Swing display on the event thread,
+* in the order the calls were made. Lets the game run on a thread of its own
+* (see InputPipeline) while the window keeps repainting and taking input.
+*/
+
+import java.awt.Color;
+import javax.swing.SwingUtilities;
+
+public class EventThreadDisplay extends ForwardingDisplay {
+	public EventThreadDisplay(BejeweledDisplay display) {
+		super(display);
+	}
+
+	public void setPiece(final int row, final int col, final int piece) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.setPiece(row, col, piece);
+			}
+		});
+	}
+
+	public void highlightSlot(final int row, final int col, final Color colour) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.highlightSlot(row, col, colour);
+			}
+		});
+	}
+
+	public void unhighlightSlot(final int row, final int col) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.unhighlightSlot(row, col);
+			}
+		});
+	}
+
+	public void showSwap(final int row1, final int col1, final int row2, final int col2) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showSwap(row1, col1, row2, col2);
+			}
+		});
+	}
+
+	public void showFall(final int row, final int col) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showFall(row, col);
+			}
+		});
+	}
+
+	public void setScore(final int point) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.setScore(point);
+			}
+		});
+	}
+
+	public void setMoveLeft(final int num) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.setMoveLeft(num);
+			}
+		});
+	}
+
+	public void showInvalidSwapMessage() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showInvalidSwapMessage();
+			}
+		});
+	}
+
+	public void showInvalidMoveMessage() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showInvalidMoveMessage();
+			}
+		});
+	}
+
+	public void showHintMessage(final int row, final int column) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showHintMessage(row, column);
+			}
+		});
+	}
+
+	public void showChainSizeMessage(final int chainSize) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showChainSizeMessage(chainSize);
+			}
+		});
+	}
+
+	public void showChainReactionMessage() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showChainReactionMessage();
+			}
+		});
+	}
+
+	public void showOutOfMovesMessage(final int point) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showOutOfMovesMessage(point);
+			}
+		});
+	}
+
+	public void showNoMoreMovesMessage(final int point, final int numMove) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showNoMoreMovesMessage(point, numMove);
+			}
+		});
+	}
+
+	public void showGameOverMessage(final int point, final int numMove) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				display.showGameOverMessage(point, numMove);
+			}
+		});
+	}
+}
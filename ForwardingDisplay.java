@@ -0,0 +1,79 @@
+/**
+* ForwardingDisplay.java
+* A display that passes every call on to another display. Subclasses override
+* the methods they want to observe or change.
+*/
+
+import java.awt.Color;
+
+public class ForwardingDisplay implements BejeweledDisplay {
+	protected final BejeweledDisplay display;
+
+	public ForwardingDisplay(BejeweledDisplay display) {
+		this.display = display;
+	}
+
+	public void setPiece(int row, int col, int piece) {
+		display.setPiece(row, col, piece);
+	}
+
+	public void highlightSlot(int row, int col, Color colour) {
+		display.highlightSlot(row, col, colour);
+	}
+
+	public void unhighlightSlot(int row, int col) {
+		display.unhighlightSlot(row, col);
+	}
+
+	public void showSwap(int row1, int col1, int row2, int col2) {
+		display.showSwap(row1, col1, row2, col2);
+	}
+
+	public void showFall(int row, int col) {
+		display.showFall(row, col);
+	}
+
+	public boolean showsBoard() {
+		return display.showsBoard();
+	}
+
+	public void setScore(int point) {
+		display.setScore(point);
+	}
+
+	public void setMoveLeft(int num) {
+		display.setMoveLeft(num);
+	}
+
+	public void showInvalidSwapMessage() {
+		display.showInvalidSwapMessage();
+	}
+
+	public void showInvalidMoveMessage() {
+		display.showInvalidMoveMessage();
+	}
+
+	public void showHintMessage(int row, int column) {
+		display.showHintMessage(row, column);
+	}
+
+	public void showChainSizeMessage(int chainSize) {
+		display.showChainSizeMessage(chainSize);
+	}
+
+	public void showChainReactionMessage() {
+		display.showChainReactionMessage();
+	}
+
+	public void showOutOfMovesMessage(int point) {
+		display.showOutOfMovesMessage(point);
+	}
+
+	public void showNoMoreMovesMessage(int point, int numMove) {
+		display.showNoMoreMovesMessage(point, numMove);
+	}
+
+	public void showGameOverMessage(int point, int numMove) {
+		display.showGameOverMessage(point, numMove);
+	}
+}
@@ -0,0 +1,10 @@
+/**
+* GreedyStrategy.java
+* Always makes the move that scores the most points right away.
+*/
+
+public class GreedyStrategy implements Strategy {
+	public int[] chooseMove(BoardView view) {
+		return view.analyze().getBestMove();
+	}
+}
@@ -0,0 +1,58 @@
+/**
+* HeadlessDisplay.java
+* A display that shows nothing. Used when the game is played by a program
+* instead of a person, so no window is opened and no dialogs block the game.
+*/
+
+import java.awt.Color;
+
+public class HeadlessDisplay implements BejeweledDisplay {
+	public void setPiece(int row, int col, int piece) {
+	}
+
+	public void highlightSlot(int row, int col, Color colour) {
+	}
+
+	public void unhighlightSlot(int row, int col) {
+	}
+
+	public void showSwap(int row1, int col1, int row2, int col2) {
+	}
+
+	public boolean showsBoard() {
+		return false;
+	}
+
+	public void showFall(int row, int col) {
+	}
+
+	public void setScore(int point) {
+	}
+
+	public void setMoveLeft(int num) {
+	}
+
+	public void showInvalidSwapMessage() {
+	}
+
+	public void showInvalidMoveMessage() {
+	}
+
+	public void showHintMessage(int row, int column) {
+	}
+
+	public void showChainSizeMessage(int chainSize) {
+	}
+
+	public void showChainReactionMessage() {
+	}
+
+	public void showOutOfMovesMessage(int point) {
+	}
+
+	public void showNoMoreMovesMessage(int point, int numMove) {
+	}
+
+	public void showGameOverMessage(int point, int numMove) {
+	}
+}
@@ -0,0 +1,178 @@
+/**
+* InputPipeline.java
+* Turns the player's input into commands for the game and runs them in the
+* order they were made, on a game thread of its own. The event thread only
+* queues commands, so the window keeps repainting and taking input while a
+* long cascade resolves; input made in the meantime waits in the queue and
+* runs as soon as the current command finishes. The game's display must
+* therefore be safe to call from the game thread (see EventThreadDisplay).
+*
+* For every command the pipeline measures the time from the mouse event to
+* the end of the first repaint after the command ran (in a time attack, after
+* the tick that handled it), and records it in a LatencyHistogram.
+*/
+
+import java.awt.Toolkit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+
+public class InputPipeline {
+	private final int SELECT = 0;		// a piece was clicked
+	private final int SWAP = 1;			// a piece was dragged onto its neighbour
+	private final int HINT = 2;			// the "Hint" button was clicked
+	private final int END_GAME = 3;		// the "End Game" button was clicked
+
+	private final Bejeweled game;
+	private volatile TimeAttackMode timeAttack;	// if set, all input goes here instead of to the game
+	private final ExecutorService gameThread;	// runs the queued commands one at a time, in order
+	private final LatencyHistogram latency;
+
+	private static class Command {
+		final int type;
+		final int row1, col1, row2, col2;
+		final long eventNanos;	// System.nanoTime() of the mouse event
+
+		Command(int type, int row1, int col1, int row2, int col2, long eventNanos) {
+			this.type = type;
+			this.row1 = row1;
+			this.col1 = col1;
+			this.row2 = row2;
+			this.col2 = col2;
+			this.eventNanos = eventNanos;
+		}
+	}
+
+	public InputPipeline(Bejeweled game) {
+		this.game = game;
+		gameThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "game");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		latency = new LatencyHistogram();
+	}
+
+	public void submitSelect(int row, int col, long eventNanos) {
+		submit(new Command(SELECT, row, col, -1, -1, eventNanos));
+	}
+
+	public void submitSwap(int row1, int col1, int row2, int col2, long eventNanos) {
+		submit(new Command(SWAP, row1, col1, row2, col2, eventNanos));
+	}
+
+	public void submitHint(long eventNanos) {
+		submit(new Command(HINT, -1, -1, -1, -1, eventNanos));
+	}
+
+	public void submitEndGame(long eventNanos) {
+		submit(new Command(END_GAME, -1, -1, -1, -1, eventNanos));
+	}
+
+	/**
+	* setTimeAttackMode
+	* Sends all input to the given time attack from now on, so it is handled
+	* between the time attack's cascade steps.
+	*/
+	public void setTimeAttackMode(TimeAttackMode timeAttack) {
+		this.timeAttack = timeAttack;
+	}
+
+	/**
+	* Returns the thread the game is played on. Anything else that changes
+	* the game, like the ticks of a time attack, must run there too.
+	*/
+	public Executor getGameThread() {
+		return gameThread;
+	}
+
+	/**
+	* Returns the input-to-repaint latencies measured so far.
+	*/
+	public LatencyHistogram getLatencyHistogram() {
+		return latency;
+	}
+
+	/**
+	* submit
+	* Queues the command to run on the game thread after the commands queued
+	* before it. Can be called from any thread.
+	*/
+	private void submit(final Command command) {
+		gameThread.execute(new Runnable() {
+			public void run() {
+				InputPipeline.this.run(command);
+			}
+		});
+	}
+
+	/**
+	* run
+	* Runs the command on the game and measures its latency. In a time attack
+	* the command is only queued here; the latency is measured once a tick
+	* has handled it, so it still ends at the first repaint that shows it.
+	*/
+	private void run(final Command command) {
+		TimeAttackMode timeAttack = this.timeAttack;
+		if (timeAttack != null) {
+			Runnable handled = new Runnable() {
+				public void run() {
+					measureLatency(command.eventNanos);
+				}
+			};
+			switch (command.type) {
+				case SELECT:
+					timeAttack.submitSelect(command.row1, command.col1, handled);
+					break;
+				case SWAP:
+					timeAttack.submitSwap(command.row1, command.col1, command.row2, command.col2, handled);
+					break;
+				case HINT:
+					timeAttack.submitHint(handled);
+					break;
+				default:
+					timeAttack.submitEndGame(handled);
+			}
+			return;
+		}
+		switch (command.type) {
+			case SELECT:
+				game.play(command.row1, command.col1);
+				break;
+			case SWAP:
+				game.playSwap(command.row1, command.col1, command.row2, command.col2);
+				break;
+			case HINT:
+				game.displayHint();
+				break;
+			default:
+				game.endGame();
+		}
+		measureLatency(command.eventNanos);
+	}
+
+	/**
+	* measureLatency
+	* The command's display changes were posted to the event queue while it
+	* ran, so a task posted now runs after all of them. Each change makes Swing
+	* post a repaint to the end of the queue, possibly behind that task, so it
+	* posts a second task, which runs once the repaint is done, flushes the
+	* screen and records the latency.
+	*/
+	private void measureLatency(final long eventNanos) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						Toolkit.getDefaultToolkit().sync();
+						latency.record(System.nanoTime() - eventNanos);
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,100 @@
+/**
+* LatencyHistogram.java
+* Counts how many measured durations fall into each of a set of buckets. The
+* buckets grow exponentially: every power of two nanoseconds is split into
+* SUB_BUCKETS equal parts, so any duration from 1 ns to several centuries is
+* recorded with an error of at most 1/SUB_BUCKETS (12.5%). Recording is
+* lock-free and may be done from any thread.
+*/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	* record
+	* Adds one duration, in nanoseconds, to the histogram. Negative durations
+	* are recorded as 0.
+	*/
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(nanos));
+		totalCount.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalNanos.get() / count;
+	}
+
+	/**
+	* getPercentileNanos
+	* Returns an upper bound of the duration below which the given percentage
+	* (0 to 100) of the recorded durations fall, or 0 if nothing was recorded.
+	*/
+	public long getPercentileNanos(double percentile) {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	/**
+	* toString
+	* Returns a one-line summary in milliseconds.
+	*/
+	public String toString() {
+		return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+			getCount(), getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6, getPercentileNanos(90) / 1e6,
+			getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+	}
+
+	private static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << (magnitude - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,34 @@
+/**
+* LookaheadStrategy.java
+* Tries every valid move on a copy of the game, including the cascades it
+* causes, and picks the one for which the points scored plus the points of
+* the best next move are highest. The refills in the copies are guesses, so
+* the bot doesn't know more than a player would.
+*/
+
+import java.util.Random;
+
+public class LookaheadStrategy implements Strategy {
+	private final Random random;
+
+	public LookaheadStrategy(long seed) {
+		random = new Random(seed);
+	}
+
+	public int[] chooseMove(BoardView view) {
+		int[] bestMove = null;
+		int bestPoints = -1;
+		for (int[] move : view.analyze().getValidMoves()) {
+			BoardView after = view.simulate(random.nextLong(), move[0], move[1], move[2], move[3]);
+			int points = after.getScore() - view.getScore();
+			if (after.getMovesLeft() > 0) {
+				points += after.analyze().getBestMatchCount();
+			}
+			if (points > bestPoints) {
+				bestMove = move;
+				bestPoints = points;
+			}
+		}
+		return bestMove;
+	}
+}
@@ -0,0 +1,256 @@
+/**
+* PieceDistribution.java
+* How likely each piece style is to be dropped in when the board is filled or
+* refilled. Pieces are drawn with Walker's alias method: the table is built
+* once in O(number of styles), and every draw then takes one column of the
+* table and one comparison, however many styles or uneven the weights.
+*
+* A distribution can also hold back pieces that would complete a chain as
+* soon as they land: when the two pieces a new piece lands next to in its
+* column are alike, their style is picked with its weight multiplied by the
+* chain weight. Only the column is looked at, because the rows beside a new
+* piece may still be falling (columns are refilled independently, and by the
+* CascadeResolver in parallel). One extra table is built for each style, so
+* this costs O(number of styles squared) once and nothing per draw.
+*
+* A distribution never changes after it is built, so a game can switch to a
+* new one at any time without locking; a column being refilled simply
+* finishes with the distribution it started with.
+*/
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+public class PieceDistribution {
+	private final AliasTable table;			// picks a piece by weight
+	private final AliasTable[] avoiding;	// avoiding[i]: picks a piece with piece i held back, or null if no piece is
+	private final double[] weight;			// the normalised weight of each piece, for display
+	private final double chainWeight;		// how much a piece that would complete a chain is held back
+
+	/**
+	* An alias table for one set of weights.
+	*/
+	private static class AliasTable {
+		final double[] probability;		// probability[i]: the chance column i of the table picks piece i
+		final int[] alias;				// alias[i]: the piece column i picks otherwise
+
+		/**
+		* Builds the table for the given weights, which must add up to a
+		* positive total.
+		*/
+		AliasTable(double[] weights) {
+			int n = weights.length;
+			double total = 0;
+			for (double w : weights) {
+				total += w;
+			}
+			probability = new double[n];
+			alias = new int[n];
+
+			// Vose's method: scale the weights so they average 1, then repeatedly
+			// fill up a column that is below 1 with the excess of one that is above 1
+			double[] scaled = new double[n];
+			ArrayDeque<Integer> small = new ArrayDeque<Integer>();
+			ArrayDeque<Integer> large = new ArrayDeque<Integer>();
+			for (int i = 0; i < n; i++) {
+				scaled[i] = weights[i] / total * n;
+				if (scaled[i] < 1) {
+					small.add(i);
+				} else {
+					large.add(i);
+				}
+			}
+			while (!small.isEmpty() && !large.isEmpty()) {
+				int less = small.poll();
+				int more = large.poll();
+				probability[less] = scaled[less];
+				alias[less] = more;
+				scaled[more] = (scaled[more] + scaled[less]) - 1;
+				if (scaled[more] < 1) {
+					small.add(more);
+				} else {
+					large.add(more);
+				}
+			}
+			// whatever is left is 1 up to rounding errors
+			while (!large.isEmpty()) {
+				int i = large.poll();
+				probability[i] = 1;
+				alias[i] = i;
+			}
+			while (!small.isEmpty()) {
+				int i = small.poll();
+				probability[i] = 1;
+				alias[i] = i;
+			}
+		}
+
+		int sample(long bits) {
+			int column = (int)(((bits >>> 32) * probability.length) >>> 32);
+			double random = (bits & 0xFFFFFFFFL) * 0x1.0p-32;
+			return random < probability[column] ? column : alias[column];
+		}
+	}
+
+	/**
+	* Creates a distribution where piece i is picked with a chance proportional
+	* to weights[i]. Weights must not be negative and at least one must be positive.
+	*/
+	public PieceDistribution(double[] weights) {
+		this(weights, 1);
+	}
+
+	/**
+	* Creates a distribution like the one above that also holds back pieces
+	* that would complete a chain in their column: their weight is multiplied
+	* by chainWeight, between 0 (never, unless nothing else can be picked) and
+	* 1 (as likely as any other time).
+	*/
+	public PieceDistribution(double[] weights, double chainWeight) {
+		int n = weights.length;
+		double total = 0;
+		for (double w : weights) {
+			if (w < 0 || Double.isNaN(w) || Double.isInfinite(w)) {
+				throw new IllegalArgumentException("Invalid piece weight: " + w);
+			}
+			total += w;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("At least one piece weight must be positive.");
+		}
+		if (!(chainWeight >= 0 && chainWeight <= 1)) {
+			throw new IllegalArgumentException("Invalid chain weight: " + chainWeight);
+		}
+
+		weight = new double[n];
+		for (int i = 0; i < n; i++) {
+			weight[i] = weights[i] / total;
+		}
+		this.chainWeight = chainWeight;
+		table = new AliasTable(weights);
+		if (chainWeight == 1) {
+			avoiding = null;
+			return;
+		}
+		avoiding = new AliasTable[n];
+		for (int piece = 0; piece < n; piece++) {
+			if (chainWeight == 0 && weight[piece] == 1) {
+				// nothing else can be picked
+				avoiding[piece] = table;
+				continue;
+			}
+			double[] held = weight.clone();
+			held[piece] *= chainWeight;
+			avoiding[piece] = new AliasTable(held);
+		}
+	}
+
+	/**
+	* uniform
+	* Returns a distribution where every piece is equally likely.
+	*/
+	public static PieceDistribution uniform(int numPieceStyle) {
+		double[] weights = new double[numPieceStyle];
+		Arrays.fill(weights, 1);
+		return new PieceDistribution(weights);
+	}
+
+	/**
+	* fromProperties
+	* Returns the distribution a level is set up with: the weights given as a
+	* comma separated list in the system property bejeweled.pieceWeights (all
+	* 1 if it is not set) and the chain weight in bejeweled.chainWeight (1 if
+	* it is not set).
+	*/
+	public static PieceDistribution fromProperties(int numPieceStyle) {
+		double[] weights = new double[numPieceStyle];
+		Arrays.fill(weights, 1);
+		String list = System.getProperty("bejeweled.pieceWeights");
+		if (list != null) {
+			String[] values = list.split(",");
+			if (values.length != numPieceStyle) {
+				throw new IllegalArgumentException("Expected " + numPieceStyle + " piece weights but got " + values.length + ".");
+			}
+			for (int piece = 0; piece < numPieceStyle; piece++) {
+				weights[piece] = Double.parseDouble(values[piece].trim());
+			}
+		}
+		double chainWeight = Double.parseDouble(System.getProperty("bejeweled.chainWeight", "1"));
+		return new PieceDistribution(weights, chainWeight);
+	}
+
+	/**
+	* balancing
+	* Returns a distribution like base that makes pieces that are already
+	* common in the top rows of the board less likely. New pieces land in the
+	* top rows, so this makes chains formed by the refill itself (cascades the
+	* player did not earn) rarer. strength 0 gives base itself; the larger it
+	* is, the more common pieces are held back. Pieces that would complete a
+	* chain in their column are held back as much as base holds them back.
+	*/
+	public static PieceDistribution balancing(int[][] board, PieceDistribution base, int numTopRows, double strength) {
+		int numPieceStyle = base.getNumPieceStyle();
+		int[] count = new int[numPieceStyle];
+		int total = 0;
+		for (int row = 0; row < Math.min(numTopRows, board.length); row++) {
+			for (int piece : board[row]) {
+				if (piece >= 0 && piece < numPieceStyle) {
+					count[piece]++;
+					total++;
+				}
+			}
+		}
+		double expected = Math.max(1, (double) total / numPieceStyle);
+		double[] weights = new double[numPieceStyle];
+		for (int piece = 0; piece < numPieceStyle; piece++) {
+			weights[piece] = base.weight[piece] / (1 + strength * count[piece] / expected);
+		}
+		return new PieceDistribution(weights, base.chainWeight);
+	}
+
+	/**
+	* sample
+	* Picks a piece using 64 random bits: the high 32 bits choose a column of
+	* the table and the low 32 bits decide between the column's piece and its alias.
+	*/
+	public int sample(long bits) {
+		return table.sample(bits);
+	}
+
+	/**
+	* sample
+	* Picks a piece like the method above for a slot whose two nearest pieces
+	* in its column are neighbour and nextNeighbour (negative if there is no
+	* piece). If they are alike, their style is held back by the chain weight.
+	*/
+	public int sample(long bits, int neighbour, int nextNeighbour) {
+		if (avoiding == null || neighbour < 0 || neighbour != nextNeighbour) {
+			return table.sample(bits);
+		}
+		return avoiding[neighbour].sample(bits);
+	}
+
+	/**
+	* avoidsChains
+	* Returns whether the pieces a new piece lands next to change what it is
+	* likely to be, i.e. whether the chain weight is below 1.
+	*/
+	public boolean avoidsChains() {
+		return avoiding != null;
+	}
+
+	public int getNumPieceStyle() {
+		return weight.length;
+	}
+
+	/**
+	* Returns the chance that the given piece is picked.
+	*/
+	public double getProbability(int piece) {
+		return weight[piece];
+	}
+
+	public double getChainWeight() {
+		return chainWeight;
+	}
+}
@@ -0,0 +1,201 @@
+/**
+* PuzzleSolver.java
+* Finds the smallest number of moves needed to reach a target score or a target
+* number of cleared pieces on a deterministic level, i.e. a game whose refills
+* come from a seeded RefillSequence. Used to check that a level can be beaten
+* within the number of moves it allows.
+*
+* The search is an iterative-deepening depth-first search: it tries every
+* sequence of 1 move, then every sequence of 2 moves, and so on, so the first
+* solution found is a shortest one. Positions already searched deep enough are
+* skipped using a shared transposition table keyed by the Zobrist hash of the
+* board. The first few plies of the search tree are split into fork/join tasks
+* so idle threads steal work from busy ones.
+*
+* Usage: java PuzzleSolver seed targetScore [targetCleared [numRow numCol numPieceStyle]]
+* The level's pieces are picked as set by -Dbejeweled.pieceWeights,
+* -Dbejeweled.chainWeight and -Dbejeweled.balance, as in BejeweledRunner.
+*/
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PuzzleSolver {
+	private final int PARALLEL_PLIES = 2;			// moves closer than this to the start are searched in parallel
+	private final int TABLE_STRIPES = 256;			// number of independently locked parts of the transposition table
+	private final int TABLE_SIZE = 1 << 22;			// maximum number of positions remembered
+
+	private final ForkJoinPool pool;
+
+	public PuzzleSolver() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public PuzzleSolver(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	* solve
+	* Returns a shortest list of moves that takes the level to at least
+	* targetScore points and targetCleared cleared pieces without using more
+	* moves than the level has left. Each move is {row1, col1, row2, col2}.
+	* Returns null if there is no such list. The level itself is not changed.
+	*/
+	public List<int[]> solve(Bejeweled level, int targetScore, int targetCleared) {
+		Search search = new Search(level, targetScore, targetCleared);
+		for (int depth = 0; depth <= level.numMoveLeft; depth++) {
+			search.solved.set(false);
+			LinkedList<int[]> moves = pool.invoke(new SearchTask(search, level.copy(), depth, 0));
+			if (moves != null) {
+				return moves;
+			}
+		}
+		return null;
+	}
+
+	/**
+	* The state shared by all tasks of one solve call.
+	*/
+	private class Search {
+		final int targetScore;
+		final int targetCleared;
+		final TranspositionTable table;
+		final AtomicBoolean solved;		// set once a task has found a solution, so others stop early
+
+		Search(Bejeweled level, int targetScore, int targetCleared) {
+			this.targetScore = targetScore;
+			this.targetCleared = targetCleared;
+			table = new TranspositionTable(TABLE_STRIPES, TABLE_SIZE);
+			solved = new AtomicBoolean();
+		}
+
+		boolean reachedTarget(Bejeweled game) {
+			return game.score >= targetScore && game.numPiecesCleared >= targetCleared;
+		}
+
+		/**
+		* Hashes everything that decides what can happen from this position: the
+		* board, the position in the refill sequence and the progress so far.
+		*/
+		long hash(Bejeweled game) {
+			long progress = ((long)game.score << 32) | game.numPiecesCleared;
+			return game.boardHash ^ game.refill.stateHash() ^ RefillSequence.mix(progress);
+		}
+	}
+
+	/**
+	* Searches for a solution of at most depth moves from the given game.
+	* Returns the moves found, or null.
+	*/
+	private class SearchTask extends RecursiveTask<LinkedList<int[]>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Search search;
+		private final Bejeweled game;
+		private final int depth;
+		private final int ply;
+
+		SearchTask(Search search, Bejeweled game, int depth, int ply) {
+			this.search = search;
+			this.game = game;
+			this.depth = depth;
+			this.ply = ply;
+		}
+
+		protected LinkedList<int[]> compute() {
+			if (search.reachedTarget(game)) {
+				search.solved.set(true);
+				return new LinkedList<int[]>();
+			}
+			int movesLeft = Math.min(depth, game.numMoveLeft);
+			if (movesLeft <= 0 || search.solved.get()) {
+				return null;
+			}
+			long hash = search.hash(game);
+			if (search.table.wasSearched(hash, movesLeft)) {
+				return null;
+			}
+
+			LinkedList<int[]> result;
+			if (ply < PARALLEL_PLIES) {
+				result = searchParallel();
+			} else {
+				result = searchSequential();
+			}
+			// only remember positions whose whole subtree was searched
+			if (result == null && !search.solved.get()) {
+				search.table.recordSearched(hash, movesLeft);
+			}
+			return result;
+		}
+
+		private LinkedList<int[]> searchParallel() {
+			List<int[]> moves = game.analyzeBoard().getValidMoves();
+			List<SearchTask> tasks = new ArrayList<SearchTask>();
+			for (int[] move : moves) {
+				Bejeweled child = game.copy();
+				child.swap(move[0], move[1], move[2], move[3]);
+				tasks.add(new SearchTask(search, child, depth - 1, ply + 1));
+			}
+			invokeAll(tasks);
+			for (int i = 0; i < tasks.size(); i++) {
+				LinkedList<int[]> result = tasks.get(i).join();
+				if (result != null) {
+					result.addFirst(moves.get(i));
+					return result;
+				}
+			}
+			return null;
+		}
+
+		private LinkedList<int[]> searchSequential() {
+			for (int[] move : game.analyzeBoard().getValidMoves()) {
+				if (search.solved.get()) {
+					return null;
+				}
+				Bejeweled child = game.copy();
+				child.swap(move[0], move[1], move[2], move[3]);
+				LinkedList<int[]> result = new SearchTask(search, child, depth - 1, ply + 1).compute();
+				if (result != null) {
+					result.addFirst(move);
+					return result;
+				}
+			}
+			return null;
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: java PuzzleSolver seed targetScore [targetCleared [numRow numCol numPieceStyle]]");
+			return;
+		}
+		long seed = Long.parseLong(args[0]);
+		int targetScore = Integer.parseInt(args[1]);
+		int targetCleared = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		int numRow = args.length > 5 ? Integer.parseInt(args[3]) : 8;
+		int numCol = args.length > 5 ? Integer.parseInt(args[4]) : 8;
+		int numPieceStyle = args.length > 5 ? Integer.parseInt(args[5]) : 7;
+
+		Bejeweled level = new Bejeweled(new HeadlessDisplay(), numRow, numCol, numPieceStyle, new RefillSequence(seed), null,
+			PieceDistribution.fromProperties(numPieceStyle));
+		level.setBalancing(Double.parseDouble(System.getProperty("bejeweled.balance", "0")));
+		long start = System.nanoTime();
+		List<int[]> moves = new PuzzleSolver().solve(level, targetScore, targetCleared);
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		if (moves == null) {
+			System.out.println("Not solvable within " + level.numMoveLeft + " moves (" + millis + " ms).");
+		} else {
+			System.out.println("Solvable in " + moves.size() + " moves (" + millis + " ms):");
+			for (int[] move : moves) {
+				System.out.println("  (" + move[0] + ", " + move[1] + ") <-> (" + move[2] + ", " + move[3] + ")");
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/**
+* QuietDisplay.java
+* A display that shows the board but none of the messages about chains,
+* invalid moves and hints. Used in modes where the game must not wait for the
+* player to close a dialog; TimeAttackMode highlights its hints itself.
+*/
+
+public class QuietDisplay extends ForwardingDisplay {
+	public QuietDisplay(BejeweledDisplay display) {
+		super(display);
+	}
+
+	public void showInvalidSwapMessage() {
+	}
+
+	public void showInvalidMoveMessage() {
+	}
+
+	public void showChainSizeMessage(int chainSize) {
+	}
+
+	public void showChainReactionMessage() {
+	}
+
+	public void showHintMessage(int row, int column) {
+	}
+}
@@ -0,0 +1,23 @@
+/**
+* RandomStrategy.java
+* Makes a random valid move. Useful as the baseline every other bot should beat.
+*/
+
+import java.util.List;
+import java.util.Random;
+
+public class RandomStrategy implements Strategy {
+	private final Random random;
+
+	public RandomStrategy(long seed) {
+		random = new Random(seed);
+	}
+
+	public int[] chooseMove(BoardView view) {
+		List<int[]> moves = view.analyze().getValidMoves();
+		if (moves.isEmpty()) {
+			return null;
+		}
+		return moves.get(random.nextInt(moves.size()));
+	}
+}
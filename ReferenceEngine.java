@@ -0,0 +1,399 @@
+/**
+* ReferenceEngine.java
+* The rules of the game as the original Bejeweled class implemented them,
+* without a display and without any of the later speed-ups (chain scanners,
+* the analysis cache, stepped cascades, banded clearing). The
+* DifferentialFuzzer compares every faster engine against this one, so it
+* only changes when the rules of the game change on purpose. These rule
+* changes are followed deliberately, each only when asked for:
+*
+* - Pieces are drawn from a RefillSequence through a PieceDistribution
+*   (uniform unless another one is given), which may weight the piece styles
+*   and hold back pieces that would complete a chain, so both engines see the
+*   same pieces for the same seed and distribution.
+* - With setBalancing, the pieces are balanced once per move, before its
+*   cascade, like Bejeweled.setBalancing.
+* - An engine created with clearsAllChains follows the rule of
+*   CascadeResolver when removing the chains left after a swap: every run of
+*   three or more is removed at once and scores one point per piece.
+*
+* known issue (kept on purpose): when there are intersecting chains, only one
+* of them may be detected.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReferenceEngine implements DifferentialFuzzer.Engine {
+	private final int MIN_CHAIN_LENGTH = 3;
+	private final int NUMMOVE = 20;
+	private final int EMPTY = -1;
+	private final int BALANCE_ROWS = 3;
+
+	private final int NUMPIECESTYLE;
+	private final int NUMROW;
+	private final int NUMCOL;
+	private final boolean clearsAllChains;
+
+	private final RefillSequence refill;
+	private final PieceDistribution levelDistribution;
+	private PieceDistribution distribution;
+	private double balanceStrength;
+	private final int[][] board;
+
+	private int slot1Row, slot1Col;
+	private int totalChainLength;
+	private int score;
+	private int numMoveLeft;
+	private boolean findingValidMove;
+
+	public ReferenceEngine(int numRow, int numCol, int numPieceStyle, long seed) {
+		this(numRow, numCol, numPieceStyle, seed, false);
+	}
+
+	public ReferenceEngine(int numRow, int numCol, int numPieceStyle, long seed, boolean clearsAllChains) {
+		this(numRow, numCol, numPieceStyle, seed, clearsAllChains, PieceDistribution.uniform(numPieceStyle));
+	}
+
+	public ReferenceEngine(int numRow, int numCol, int numPieceStyle, long seed, boolean clearsAllChains, PieceDistribution distribution) {
+		this.clearsAllChains = clearsAllChains;
+		NUMPIECESTYLE = numPieceStyle;
+		NUMROW = numRow;
+		NUMCOL = numCol;
+		refill = new RefillSequence(seed);
+		levelDistribution = distribution;
+		this.distribution = distribution;
+		board = new int[NUMROW][NUMCOL];
+
+		score = 0;
+		numMoveLeft = NUMMOVE;
+		initializeBoard();
+		removeExistingChains(false);
+	}
+
+	public int[][] getBoard() {
+		return board;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getMovesLeft() {
+		return numMoveLeft;
+	}
+
+	/**
+	* setBalancing
+	* Bejeweled.setBalancing: from now on, the distribution is balanced
+	* against the top rows once per move, before its cascade.
+	*/
+	public void setBalancing(double strength) {
+		balanceStrength = strength;
+		distribution = levelDistribution;
+	}
+
+	private void rebalance() {
+		if (balanceStrength > 0) {
+			distribution = PieceDistribution.balancing(board, levelDistribution, BALANCE_ROWS, balanceStrength);
+		}
+	}
+
+	/**
+	* swap
+	* The second click of Bejeweled.play on a valid selection, without the messages.
+	*/
+	public boolean swap(int row1, int col1, int row2, int col2) {
+		if (row1 < 0 || row1 >= NUMROW || col1 < 0 || col1 >= NUMCOL || row2 < 0 || row2 >= NUMROW || col2 < 0 || col2 >= NUMCOL) {
+			return false;
+		}
+		slot1Row = row1;
+		slot1Col = col1;
+		if (Math.abs(row1 - row2) + Math.abs(col1 - col2) != 1) {
+			return false;
+		}
+		swapWithFirstSelection(row2, col2);
+		if (checkChainFormation(row2, col2)) {
+			score += totalChainLength;
+			rebalance();
+			numMoveLeft--;
+			fillEmptySlots();
+			removeExistingChains(true);
+			totalChainLength = 0;
+			return true;
+		}
+		swapWithFirstSelection(row2, col2);
+		return false;
+	}
+
+	/**
+	* hasPossibleMove
+	* The original findPossibleMoves, which stops at the first valid move.
+	*/
+	public boolean hasPossibleMove() {
+		findingValidMove = true;
+		try {
+			for (int row = 0; row < NUMROW; row++) {
+				for (int col = 0; col < NUMCOL; col++) {
+					slot1Row = row;
+					slot1Col = col;
+					for (int i = -1; i <= 1; i += 2) {
+						if (isValidSwap(row + i, col) || isValidSwap(row, col + i)) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		} finally {
+			totalChainLength = 0;
+			findingValidMove = false;
+		}
+	}
+
+	/**
+	* validMoves
+	* Returns every swap of two adjacent pieces that forms a chain, each
+	* listed once, as {row1, col1, row2, col2}.
+	*/
+	public List<int[]> validMoves() {
+		List<int[]> moves = new ArrayList<int[]>();
+		findValidMoves(moves);
+		return moves;
+	}
+
+	public List<int[]> getValidMoves() {
+		return validMoves();
+	}
+
+	/**
+	* getBestMatchCount
+	* Returns the most points a single swap would score right away, counted
+	* like checkChainFormation counts them, or 0 if no swap forms a chain.
+	*/
+	public int getBestMatchCount() {
+		return findValidMoves(new ArrayList<int[]>());
+	}
+
+	/**
+	* findValidMoves
+	* Adds every swap that forms a chain to moves and returns the most points
+	* one of them scores.
+	*/
+	private int findValidMoves(List<int[]> moves) {
+		int bestMatchCount = 0;
+		findingValidMove = true;
+		for (int row = 0; row < NUMROW; row++) {
+			for (int col = 0; col < NUMCOL; col++) {
+				int[][] neighbours = {{row, col + 1}, {row + 1, col}};
+				for (int[] neighbour : neighbours) {
+					if (neighbour[0] >= NUMROW || neighbour[1] >= NUMCOL) {
+						continue;
+					}
+					slot1Row = row;
+					slot1Col = col;
+					swapWithFirstSelection(neighbour[0], neighbour[1]);
+					totalChainLength = 0;
+					boolean valid = checkChainFormation(neighbour[0], neighbour[1]);
+					swapWithFirstSelection(neighbour[0], neighbour[1]);
+					if (valid) {
+						moves.add(new int[] {row, col, neighbour[0], neighbour[1]});
+						bestMatchCount = Math.max(bestMatchCount, totalChainLength);
+					}
+				}
+			}
+		}
+		totalChainLength = 0;
+		findingValidMove = false;
+		return bestMatchCount;
+	}
+
+	private boolean isValidSwap(int newRow, int newCol) {
+		if (newRow < 0 || newRow >= NUMROW || newCol < 0 || newCol >= NUMCOL) {
+			return false;
+		}
+		swapWithFirstSelection(newRow, newCol);
+		boolean valid = checkHorizontalChain(newRow, newCol, board[newRow][newCol]) || checkVerticalChain(newRow, newCol, board[newRow][newCol]);
+		swapWithFirstSelection(newRow, newCol);
+		return valid;
+	}
+
+	private void initializeBoard() {
+		for (int row = 0; row < NUMROW; row++) {
+			for (int col = 0; col < NUMCOL; col++) {
+				long bits = refill.nextBits(col);
+				board[row][col] = row < 2 ? distribution.sample(bits) : distribution.sample(bits, board[row-1][col], board[row-2][col]);
+			}
+		}
+	}
+
+	private boolean checkChainFormation(int row, int column) {
+		int piece1 = board[row][column];
+		int piece2 = board[slot1Row][slot1Col];
+
+		boolean verticalChainFound1 = checkVerticalChain(row, column, piece1);
+		boolean horizontalChainFound1 = checkHorizontalChain(row, column, piece1);
+		if (verticalChainFound1 || horizontalChainFound1) {
+			totalChainLength++;
+		}
+		boolean verticalChainFound2 = checkVerticalChain(slot1Row, slot1Col, piece2);
+		boolean horizontalChainFound2 = checkHorizontalChain(slot1Row, slot1Col, piece2);
+		if (verticalChainFound2 || horizontalChainFound2) {
+			totalChainLength++;
+		}
+		return horizontalChainFound1 || verticalChainFound1 || horizontalChainFound2 || verticalChainFound2;
+	}
+
+	private void removeExistingChains(boolean gameInProgress) {
+		do {
+			totalChainLength = 0;
+			if (clearsAllChains) {
+				findAllChains();
+			} else {
+				findExistingChains();
+			}
+			if (gameInProgress && totalChainLength != 0) {
+				score += totalChainLength;
+			}
+			fillEmptySlots();
+		} while (totalChainLength != 0);
+	}
+
+	private void findExistingChains() {
+		for (int row = 0; row < NUMROW; row++) {
+			for (int col = 0; col < NUMCOL; col++) {
+				int piece = board[row][col];
+				if (piece != EMPTY) {
+					boolean foundVerticalChain = checkVerticalChain(row, col, piece);
+					boolean foundHorizontalChain = checkHorizontalChain(row, col, piece);
+					if (foundVerticalChain || foundHorizontalChain) {
+						totalChainLength++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	* findAllChains
+	* Marks every run of MIN_CHAIN_LENGTH or more equal pieces in a row or a
+	* column, then empties the marked slots and counts them.
+	*/
+	private void findAllChains() {
+		boolean[][] marked = new boolean[NUMROW][NUMCOL];
+		for (int row = 0; row < NUMROW; row++) {
+			int start = 0;
+			for (int col = 1; col <= NUMCOL; col++) {
+				if (col == NUMCOL || board[row][col] != board[row][start]) {
+					if (col - start >= MIN_CHAIN_LENGTH && board[row][start] != EMPTY) {
+						for (int i = start; i < col; i++) {
+							marked[row][i] = true;
+						}
+					}
+					start = col;
+				}
+			}
+		}
+		for (int col = 0; col < NUMCOL; col++) {
+			int start = 0;
+			for (int row = 1; row <= NUMROW; row++) {
+				if (row == NUMROW || board[row][col] != board[start][col]) {
+					if (row - start >= MIN_CHAIN_LENGTH && board[start][col] != EMPTY) {
+						for (int i = start; i < row; i++) {
+							marked[i][col] = true;
+						}
+					}
+					start = row;
+				}
+			}
+		}
+		for (int row = 0; row < NUMROW; row++) {
+			for (int col = 0; col < NUMCOL; col++) {
+				if (marked[row][col]) {
+					board[row][col] = EMPTY;
+					totalChainLength++;
+				}
+			}
+		}
+	}
+
+	private void swapWithFirstSelection(int row, int column) {
+		int temp = board[slot1Row][slot1Col];
+		board[slot1Row][slot1Col] = board[row][column];
+		board[row][column] = temp;
+	}
+
+	private boolean checkHorizontalChain(int row, int column, int pieceIndex) {
+		int start = column;
+		while (start > 0 && board[row][start - 1] == pieceIndex) {
+			start--;
+		}
+		int end = column;
+		while (end < NUMCOL - 1 && board[row][end + 1] == pieceIndex) {
+			end++;
+		}
+		int chainLength = end - start + 1;
+		if (chainLength < MIN_CHAIN_LENGTH) {
+			return false;
+		}
+		totalChainLength += chainLength - 1;
+		if (!findingValidMove) {
+			for (int i = start; i <= end; i++) {
+				board[row][i] = EMPTY;
+			}
+		}
+		return true;
+	}
+
+	private boolean checkVerticalChain(int row, int column, int pieceIndex) {
+		int start = row;
+		while (start > 0 && board[start - 1][column] == pieceIndex) {
+			start--;
+		}
+		int end = row;
+		while (end < NUMROW - 1 && board[end + 1][column] == pieceIndex) {
+			end++;
+		}
+		int chainLength = end - start + 1;
+		if (chainLength < MIN_CHAIN_LENGTH) {
+			return false;
+		}
+		totalChainLength += chainLength - 1;
+		if (!findingValidMove) {
+			for (int i = start; i <= end; i++) {
+				board[i][column] = EMPTY;
+			}
+		}
+		return true;
+	}
+
+	private void fillEmptySlots() {
+		for (int column = 0; column < NUMCOL; column++) {
+			for (int row = 0; row < NUMROW; row++) {
+				if (board[row][column] == EMPTY) {
+					for (int i = row; i > 0; i--) {
+						board[i][column] = board[i-1][column];
+					}
+					board[0][column] = sampleOnTop(column);
+				}
+			}
+		}
+	}
+
+	/**
+	* sampleOnTop
+	* Picks the piece that falls in at the top of the column, avoiding a chain
+	* with the two pieces it will land on: the nearest ones below that are not
+	* EMPTY.
+	*/
+	private int sampleOnTop(int column) {
+		int[] below = new int[] {EMPTY, EMPTY};
+		int found = 0;
+		for (int row = 1; row < NUMROW && found < 2; row++) {
+			if (board[row][column] != EMPTY) {
+				below[found++] = board[row][column];
+			}
+		}
+		return distribution.sample(refill.nextBits(column), below[0], below[1]);
+	}
+}
@@ -0,0 +1,94 @@
+/**
+* RefillSequence.java
+* Supplies the random bits used to pick the pieces that are dropped in at the top
+* of each column. Every column has its own stream, and the n-th value of a column
+* only depends on the seed, the column and n. Two games created with the same seed
+* and piece distribution therefore see the exact same refills, which is what makes
+* a level deterministic.
+*/
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RefillSequence {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final long seed;
+	private long[] numDrawn;	// number of pieces drawn so far from each column's stream
+
+	/**
+	* Creates a sequence with a random seed, for normal (non-deterministic) games.
+	*/
+	public RefillSequence() {
+		this(new Random().nextLong());
+	}
+
+	public RefillSequence(long seed) {
+		this.seed = seed;
+		numDrawn = new long[0];
+	}
+
+	private RefillSequence(RefillSequence other) {
+		seed = other.seed;
+		numDrawn = other.numDrawn.clone();
+	}
+
+	/**
+	* nextBits
+	* Returns the next 64 random bits of the given column's stream.
+	*/
+	public long nextBits(int column) {
+		if (column >= numDrawn.length) {
+			numDrawn = Arrays.copyOf(numDrawn, column + 1);
+		}
+		long index = numDrawn[column]++;
+		return mix(mix(seed + (column + 1) * GOLDEN_GAMMA) + index * GOLDEN_GAMMA);
+	}
+
+	/**
+	* ensureColumns
+	* Makes room for the streams of the first numCol columns. After that,
+	* different columns can be drawn from on different threads at the same time.
+	*/
+	void ensureColumns(int numCol) {
+		if (numCol > numDrawn.length) {
+			numDrawn = Arrays.copyOf(numDrawn, numCol);
+		}
+	}
+
+	/**
+	* stateHash
+	* Returns a hash of how far each column's stream has been read. Two games with
+	* the same board and the same state hash will get the same refills from now on.
+	*/
+	public long stateHash() {
+		long hash = seed;
+		for (int column = 0; column < numDrawn.length; column++) {
+			hash = mix(hash ^ (numDrawn[column] + (column + 1) * GOLDEN_GAMMA));
+		}
+		return hash;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	* copy
+	* Returns a sequence that continues from the same position as this one but
+	* advances independently.
+	*/
+	public RefillSequence copy() {
+		return new RefillSequence(this);
+	}
+
+	/**
+	* mix
+	* The SplitMix64 finalizer; spreads the bits of z over the whole long.
+	*/
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,169 @@
+/**
+* ScalarChainScanner.java
+* A ChainScanner that compares the pieces one slot at a time.
+*/
+
+public class ScalarChainScanner implements ChainScanner {
+	static final int EMPTY = -1;
+	static final int VECTOR_MIN_WIDTH = 16;		// narrower boards are scanned faster without vectors
+
+	/**
+	* Every way a single swap can form a run of three. Each pattern is four
+	* {row offset, column offset} pairs: two pieces of the run that stay put, a
+	* piece next to the third slot of the run that can be swapped into it, and
+	* that third slot. If the first three pieces are equal, the swap forms a
+	* chain. The first eight patterns form horizontal runs, the last eight are
+	* the same patterns turned on their side.
+	*/
+	static final int[][][] MOVE_PATTERNS = buildMovePatterns();
+
+	private static int[][][] buildMovePatterns() {
+		int[][][] horizontal = {
+			// the third slot is the left end of the run
+			{{0, 1}, {0, 2}, {-1, 0}, {0, 0}},
+			{{0, 1}, {0, 2}, {1, 0}, {0, 0}},
+			{{0, 1}, {0, 2}, {0, -1}, {0, 0}},
+			// the third slot is the middle of the run
+			{{0, 0}, {0, 2}, {-1, 1}, {0, 1}},
+			{{0, 0}, {0, 2}, {1, 1}, {0, 1}},
+			// the third slot is the right end of the run
+			{{0, 0}, {0, 1}, {-1, 2}, {0, 2}},
+			{{0, 0}, {0, 1}, {1, 2}, {0, 2}},
+			{{0, 0}, {0, 1}, {0, 3}, {0, 2}},
+		};
+		int[][][] patterns = new int[horizontal.length * 2][][];
+		for (int i = 0; i < horizontal.length; i++) {
+			patterns[i] = horizontal[i];
+			patterns[i + horizontal.length] = new int[4][];
+			for (int j = 0; j < 4; j++) {
+				patterns[i + horizontal.length][j] = new int[] {horizontal[i][j][1], horizontal[i][j][0]};
+			}
+		}
+		return patterns;
+	}
+
+	public boolean hasChain(int[][] board) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				int piece = board[row][col];
+				if (piece == EMPTY) {
+					continue;
+				}
+				if (col + 2 < numCol && board[row][col + 1] == piece && board[row][col + 2] == piece) {
+					return true;
+				}
+				if (row + 2 < numRow && board[row + 1][col] == piece && board[row + 2][col] == piece) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int markChains(int[][] board, int[][] marked) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		int count = 0;
+		for (int row = 0; row < numRow; row++) {
+			for (int col = 0; col < numCol; col++) {
+				int piece = board[row][col];
+				if (piece == EMPTY) {
+					continue;
+				}
+				if (col + 2 < numCol && board[row][col + 1] == piece && board[row][col + 2] == piece) {
+					count += mark(marked[row], col) + mark(marked[row], col + 1) + mark(marked[row], col + 2);
+				}
+				if (row + 2 < numRow && board[row + 1][col] == piece && board[row + 2][col] == piece) {
+					count += mark(marked[row], col) + mark(marked[row + 1], col) + mark(marked[row + 2], col);
+				}
+			}
+		}
+		return count;
+	}
+
+	private static int mark(int[] marked, int col) {
+		if (marked[col] == 1) {
+			return 0;
+		}
+		marked[col] = 1;
+		return 1;
+	}
+
+	public boolean hasPossibleMove(int[][] board) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		for (int[][] pattern : MOVE_PATTERNS) {
+			int[] rows = patternRange(pattern, 0, numRow);
+			int[] cols = patternRange(pattern, 1, numCol);
+			for (int row = rows[0]; row <= rows[1]; row++) {
+				int[] row0 = board[row + pattern[0][0]];
+				int[] row1 = board[row + pattern[1][0]];
+				int[] row2 = board[row + pattern[2][0]];
+				for (int col = cols[0]; col <= cols[1]; col++) {
+					int piece = row0[col + pattern[0][1]];
+					if (piece != EMPTY && row1[col + pattern[1][1]] == piece && row2[col + pattern[2][1]] == piece) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	public int markMoves(int[][] board, int[][] moves) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		int count = 0;
+		for (int[][] pattern : MOVE_PATTERNS) {
+			int[] rows = patternRange(pattern, 0, numRow);
+			int[] cols = patternRange(pattern, 1, numCol);
+			int[] swap = swapFlag(pattern);
+			for (int row = rows[0]; row <= rows[1]; row++) {
+				int[] row0 = board[row + pattern[0][0]];
+				int[] row1 = board[row + pattern[1][0]];
+				int[] row2 = board[row + pattern[2][0]];
+				int[] flags = moves[row + swap[0]];
+				for (int col = cols[0]; col <= cols[1]; col++) {
+					int piece = row0[col + pattern[0][1]];
+					if (piece != EMPTY && row1[col + pattern[1][1]] == piece && row2[col + pattern[2][1]] == piece
+							&& (flags[col + swap[1]] & swap[2]) == 0) {
+						flags[col + swap[1]] |= swap[2];
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	* swapFlag
+	* Returns {row offset, column offset, flag}: where markMoves flags the swap
+	* a pattern describes, and with which flag. A swap is flagged on the upper
+	* or left one of its two slots.
+	*/
+	static int[] swapFlag(int[][] pattern) {
+		int[] mover = pattern[2];
+		int[] target = pattern[3];
+		int flag = mover[0] == target[0] ? ChainScanner.SWAP_RIGHT : ChainScanner.SWAP_DOWN;
+		int[] first = mover[0] + mover[1] < target[0] + target[1] ? mover : target;
+		return new int[] {first[0], first[1], flag};
+	}
+
+	/**
+	* patternRange
+	* Returns the first and last row (axis 0) or column (axis 1) a pattern can
+	* be placed at so that all of its slots are on a board of the given size.
+	*/
+	static int[] patternRange(int[][] pattern, int axis, int size) {
+		int min = 0;
+		int max = 0;
+		for (int[] offset : pattern) {
+			min = Math.min(min, offset[axis]);
+			max = Math.max(max, offset[axis]);
+		}
+		return new int[] {-min, size - 1 - max};
+	}
+}
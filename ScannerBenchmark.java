@@ -0,0 +1,123 @@
+/**
+* ScannerBenchmark.java
+* Times the chain scanners on boards of several widths, to check where the
+* vectorised scanner starts to beat the scalar one (ScalarChainScanner's
+* VECTOR_MIN_WIDTH). For every width it times hasChain, markChains,
+* hasPossibleMove and markMoves on the same chain-free game boards with each
+* scanner, and prints the best time of several rounds in microseconds. Every
+* width is run once untimed first, so the JIT has compiled every path before
+* anything is timed.
+*
+* Usage: java --add-modules jdk.incubator.vector ScannerBenchmark [numRow [width ...]]
+*/
+
+import java.util.Arrays;
+
+public class ScannerBenchmark {
+	private static final int ROUNDS = 50;		// rounds timed per scanner and width; the best one counts
+	private static final int NUM_BOARD = 16;	// boards scanned per round
+
+	static volatile int sink;		// keeps the results of the scans alive
+
+	public static void main(String[] args) {
+		int numRow = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int[] widths = {8, 12, 16, 24, 32, 64, 256};
+		if (args.length > 1) {
+			widths = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				widths[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		ChainScanner scalar = new ScalarChainScanner();
+		ChainScanner vector = null;
+		try {
+			vector = (ChainScanner) Class.forName("VectorChainScanner").getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			System.out.println("VectorChainScanner not available; timing the scalar scanner only.");
+		} catch (LinkageError e) {
+			System.out.println("jdk.incubator.vector not available; timing the scalar scanner only.");
+		}
+
+		for (int width : widths) {
+			int[][][] boards = createBoards(numRow, width);
+			for (int i = 0; i < 3; i++) {
+				time(scalar, boards, width, null);
+				if (vector != null) {
+					time(vector, boards, width, null);
+				}
+			}
+		}
+
+		System.out.printf("%d rows, best of %d rounds of %d boards, microseconds per board%n", numRow, ROUNDS, NUM_BOARD);
+		System.out.printf("%6s %-8s %10s %10s %10s %10s %10s%n", "width", "scanner", "hasChain", "markChains", "hasMove", "markMoves", "total");
+		for (int width : widths) {
+			int[][][] boards = createBoards(numRow, width);
+			double scalarTotal = time(scalar, boards, width, "scalar");
+			if (vector != null) {
+				double vectorTotal = time(vector, boards, width, "vector");
+				System.out.printf("%6s %-8s %54.2fx%n", "", "speed-up", scalarTotal / vectorTotal);
+			}
+		}
+	}
+
+	private static int[][][] createBoards(int numRow, int width) {
+		int[][][] boards = new int[NUM_BOARD][][];
+		for (int i = 0; i < NUM_BOARD; i++) {
+			boards[i] = new Bejeweled(new HeadlessDisplay(), numRow, width, 7, new RefillSequence(i)).copyBoard();
+		}
+		return boards;
+	}
+
+	/**
+	* time
+	* Times each scan on the boards and prints one line, unless name is null.
+	* Returns the total microseconds per board.
+	*/
+	private static double time(ChainScanner scanner, int[][][] boards, int width, String name) {
+		int numRow = boards[0].length;
+		int[][] marks = new int[numRow][width];
+		long[] best = new long[4];
+		Arrays.fill(best, Long.MAX_VALUE);
+		int found = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int[][] board : boards) {
+				found += scanner.hasChain(board) ? 1 : 0;
+			}
+			long afterChain = System.nanoTime();
+			for (int[][] board : boards) {
+				found += scanner.markChains(board, marks);
+			}
+			long afterMark = System.nanoTime();
+			for (int[][] board : boards) {
+				found += scanner.hasPossibleMove(board) ? 1 : 0;
+			}
+			long afterMove = System.nanoTime();
+			for (int[][] board : boards) {
+				found += scanner.markMoves(board, marks);
+			}
+			long end = System.nanoTime();
+			// clear the flags so every round does the same work
+			for (int[] row : marks) {
+				Arrays.fill(row, 0);
+			}
+			best[0] = Math.min(best[0], afterChain - start);
+			best[1] = Math.min(best[1], afterMark - afterChain);
+			best[2] = Math.min(best[2], afterMove - afterMark);
+			best[3] = Math.min(best[3], end - afterMove);
+		}
+		double[] micros = new double[4];
+		double total = 0;
+		for (int i = 0; i < 4; i++) {
+			micros[i] = best[i] / 1000.0 / boards.length;
+			total += micros[i];
+		}
+		sink = found;
+		if (name == null) {
+			return total;
+		}
+		System.out.printf("%6d %-8s %10.2f %10.2f %10.2f %10.2f %10.2f%n", width, name, micros[0], micros[1], micros[2], micros[3], total);
+		return total;
+	}
+}
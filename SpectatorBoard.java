@@ -0,0 +1,60 @@
+/**
+* SpectatorBoard.java
+* A spectator's copy of a game, kept up to date by applying the messages
+* decoded by BoardDeltaCodec.
+*/
+
+public class SpectatorBoard {
+	private long sequence;
+	private int numRow, numCol;
+	private int[] pieces;		// the slots row by row, or null before the first keyframe
+	private int score;
+	private int movesLeft;
+
+	void reset(long sequence, int numRow, int numCol, int[] pieces, int score, int movesLeft) {
+		this.sequence = sequence;
+		this.numRow = numRow;
+		this.numCol = numCol;
+		this.pieces = pieces;
+		this.score = score;
+		this.movesLeft = movesLeft;
+	}
+
+	void setPiece(int slot, int piece) {
+		pieces[slot] = piece;
+	}
+
+	void update(long sequence, int score, int movesLeft) {
+		this.sequence = sequence;
+		this.score = score;
+		this.movesLeft = movesLeft;
+	}
+
+	public boolean hasKeyframe() {
+		return pieces != null;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getNumRow() {
+		return numRow;
+	}
+
+	public int getNumCol() {
+		return numCol;
+	}
+
+	public int getPiece(int row, int col) {
+		return pieces[row * numCol + col];
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getMovesLeft() {
+		return movesLeft;
+	}
+}
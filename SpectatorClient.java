@@ -0,0 +1,79 @@
+/**
+* SpectatorClient.java
+* Connects to a SpectatorServer and prints the board every time it changes.
+*
+* Usage: java SpectatorClient port [host]
+*/
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+public class SpectatorClient {
+	private final SocketChannel channel;
+	private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+	public SpectatorClient(String host, int port) throws IOException {
+		channel = SocketChannel.open(new InetSocketAddress(host, port));
+	}
+
+	/**
+	* readMessage
+	* Blocks until the next message has arrived and returns it without its
+	* length prefix, or returns null if the server hung up.
+	*/
+	public ByteBuffer readMessage() throws IOException {
+		lengthBuffer.clear();
+		if (!readFully(lengthBuffer)) {
+			return null;
+		}
+		ByteBuffer message = ByteBuffer.allocate(lengthBuffer.getInt(0));
+		if (!readFully(message)) {
+			return null;
+		}
+		message.flip();
+		return message;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private boolean readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java SpectatorClient port [host]");
+			return;
+		}
+		String host = args.length > 1 ? args[1] : "localhost";
+		SpectatorClient client = new SpectatorClient(host, Integer.parseInt(args[0]));
+		SpectatorBoard board = new SpectatorBoard();
+
+		ByteBuffer message;
+		while ((message = client.readMessage()) != null) {
+			if (!BoardDeltaCodec.apply(message, board)) {
+				continue;
+			}
+			StringBuilder text = new StringBuilder();
+			text.append("Score: ").append(board.getScore()).append("   Moves left: ").append(board.getMovesLeft()).append('\n');
+			for (int row = 0; row < board.getNumRow(); row++) {
+				for (int col = 0; col < board.getNumCol(); col++) {
+					int piece = board.getPiece(row, col);
+					text.append(piece < 0 ? '.' : (char) ('A' + piece)).append(' ');
+				}
+				text.append('\n');
+			}
+			System.out.println(text);
+		}
+		client.close();
+	}
+}
@@ -0,0 +1,298 @@
+/**
+* SpectatorServer.java
+* Lets other programs watch a game over TCP. The server sits between the game
+* and its real display and remembers which slots changed. A single thread
+* running a non-blocking selector collects the changes every FLUSH_INTERVAL
+* milliseconds, encodes them once as a delta (see BoardDeltaCodec) and queues
+* the same bytes on every connection.
+*
+* A spectator that reads too slowly is not allowed to hold the game or the
+* other spectators up: once more than MAX_QUEUED_BYTES are waiting for it, its
+* queued deltas are dropped and it is sent a fresh keyframe instead, as soon
+* as the message it is halfway through has been written.
+*/
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+public class SpectatorServer extends ForwardingDisplay implements Runnable {
+	private final int FLUSH_INTERVAL = 16;				// milliseconds between deltas
+	private final int MAX_QUEUED_BYTES = 64 * 1024;		// queued bytes after which a spectator counts as slow
+
+	private final int numRow, numCol;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private Thread thread;
+
+	// the latest state of the game, written by the game and read by the selector thread
+	private final int[] pieces;
+	private final BitSet changed;
+	private int score;
+	private int movesLeft;
+	private boolean statusChanged;
+
+	// only used by the selector thread
+	private long sequence;
+	private ByteBuffer keyframe;		// keyframe of the current sequence number, built when first needed
+	private int numSpectators;
+
+	private static class Spectator {
+		final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+		int queuedBytes;
+		boolean needsKeyframe = true;	// every spectator starts with a keyframe
+	}
+
+	/**
+	* Creates a server for a game of the given size that listens on the given
+	* port of the local machine. Call start() to start accepting spectators.
+	*/
+	public SpectatorServer(BejeweledDisplay display, int numRow, int numCol, int port) throws IOException {
+		super(display);
+		this.numRow = numRow;
+		this.numCol = numCol;
+		pieces = new int[numRow * numCol];
+		Arrays.fill(pieces, -1);
+		changed = new BitSet(pieces.length);
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress("localhost", port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public void start() {
+		thread = new Thread(this, "spectator-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void close() throws IOException {
+		selector.close();
+		serverChannel.close();
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	* Spectators see the board even if the display this server passes the
+	* calls on to does not.
+	*/
+	public boolean showsBoard() {
+		return true;
+	}
+
+	public void setPiece(int row, int col, int piece) {
+		super.setPiece(row, col, piece);
+		synchronized (this) {
+			int slot = row * numCol + col;
+			if (pieces[slot] != piece) {
+				pieces[slot] = piece;
+				changed.set(slot);
+			}
+		}
+	}
+
+	public void setScore(int point) {
+		super.setScore(point);
+		synchronized (this) {
+			score = point;
+			statusChanged = true;
+		}
+	}
+
+	public void setMoveLeft(int num) {
+		super.setMoveLeft(num);
+		synchronized (this) {
+			movesLeft = num;
+			statusChanged = true;
+		}
+	}
+
+	public void run() {
+		long nextFlush = System.currentTimeMillis();
+		try {
+			while (selector.isOpen()) {
+				selector.select(Math.max(1, nextFlush - System.currentTimeMillis()));
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					// a key can be ready for both; reading may disconnect the spectator
+					if (key.isReadable()) {
+						read(key);
+					}
+					if (key.isValid() && key.isWritable()) {
+						write(key);
+					}
+				}
+				if (System.currentTimeMillis() >= nextFlush) {
+					publish();
+					nextFlush = System.currentTimeMillis() + FLUSH_INTERVAL;
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Spectator server stopped: " + e.getMessage());
+		} catch (ClosedSelectorException e) {
+			// closed by close()
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(selector, SelectionKey.OP_READ, new Spectator());
+		numSpectators++;
+	}
+
+	/**
+	* read
+	* Spectators have nothing to say; reading only notices when they hang up.
+	*/
+	private void read(SelectionKey key) {
+		ByteBuffer discard = ByteBuffer.allocate(256);
+		try {
+			if (((SocketChannel) key.channel()).read(discard) < 0) {
+				disconnect(key);
+			}
+		} catch (IOException e) {
+			disconnect(key);
+		}
+	}
+
+	/**
+	* publish
+	* Encodes the changes since the last call and queues them on every
+	* spectator; spectators that are waiting for a keyframe get one instead.
+	*/
+	private void publish() {
+		ByteBuffer delta = null;
+		synchronized (this) {
+			if (!changed.isEmpty() || statusChanged) {
+				sequence++;
+				delta = BoardDeltaCodec.encodeDelta(sequence, pieces, changed, score, movesLeft);
+				changed.clear();
+				statusChanged = false;
+				keyframe = null;
+			}
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			if (!(key.attachment() instanceof Spectator) || !key.isValid()) {
+				continue;
+			}
+			Spectator spectator = (Spectator) key.attachment();
+			if (!spectator.needsKeyframe && delta != null) {
+				if (spectator.queuedBytes + delta.remaining() > MAX_QUEUED_BYTES) {
+					dropQueued(spectator);
+				} else {
+					enqueue(spectator, delta.duplicate());
+				}
+			}
+			// the keyframe can only be sent once the spectator is not halfway through a message
+			if (spectator.needsKeyframe && spectator.queue.isEmpty()) {
+				enqueue(spectator, currentKeyframe().duplicate());
+				spectator.needsKeyframe = false;
+			}
+			write(key);
+		}
+	}
+
+	private ByteBuffer currentKeyframe() {
+		if (keyframe == null) {
+			synchronized (this) {
+				keyframe = BoardDeltaCodec.encodeKeyframe(sequence, numRow, numCol, pieces, score, movesLeft);
+			}
+		}
+		return keyframe;
+	}
+
+	private void enqueue(Spectator spectator, ByteBuffer message) {
+		spectator.queue.add(message);
+		spectator.queuedBytes += message.remaining();
+	}
+
+	/**
+	* dropQueued
+	* Drops every queued message except one that has been partly written, and
+	* marks the spectator as needing a keyframe.
+	*/
+	private void dropQueued(Spectator spectator) {
+		ByteBuffer head = spectator.queue.peek();
+		spectator.queue.clear();
+		spectator.queuedBytes = 0;
+		if (head != null && head.position() > 0) {
+			enqueue(spectator, head);
+		}
+		spectator.needsKeyframe = true;
+	}
+
+	/**
+	* write
+	* Writes as much of the spectator's queue as the connection takes without
+	* blocking, and asks to be told when it can take more.
+	*/
+	private void write(SelectionKey key) {
+		Spectator spectator = (Spectator) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			while (!spectator.queue.isEmpty()) {
+				ByteBuffer head = spectator.queue.peek();
+				spectator.queuedBytes -= channel.write(head);
+				if (head.hasRemaining()) {
+					break;
+				}
+				spectator.queue.poll();
+			}
+		} catch (IOException e) {
+			disconnect(key);
+			return;
+		}
+		if (spectator.queue.isEmpty()) {
+			key.interestOps(SelectionKey.OP_READ);
+		} else {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		numSpectators--;
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// already gone
+		}
+	}
+
+	/**
+	* Returns the number of connected spectators. Only accurate when called
+	* from the selector thread; otherwise it is an estimate.
+	*/
+	public int getNumSpectators() {
+		return numSpectators;
+	}
+}
@@ -0,0 +1,13 @@
+/**
+* Strategy.java
+* A bot that plays the game. Each game gets its own Strategy object, so
+* implementations don't need to be thread-safe.
+*/
+
+public interface Strategy {
+	/**
+	* Returns the move to make as {row1, col1, row2, col2}, or null to stop
+	* playing. Only called while the game has valid moves left.
+	*/
+	int[] chooseMove(BoardView view);
+}
@@ -0,0 +1,374 @@
+/**
+* TerminalDisplay.java
+* Shows the game in a text terminal with ANSI colours, for machines without
+* a screen. Calls from the game only change a back buffer; renderFrame()
+* compares it with the front buffer (what the terminal shows now) and writes
+* just the cells and lines that differ, each with a cursor-addressed escape
+* sequence, in a single write. Redrawing an unchanged board costs nothing,
+* and a swap usually costs a few dozen bytes.
+*
+* Messages are shown on a status line below the board instead of in dialogs.
+* The display also draws the keyboard cursor used by TerminalRunner.
+*/
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TerminalDisplay implements BejeweledDisplay {
+	private final String ESC = "\u001b[";
+	private final int BOARD_TOP = 3;		// terminal line of the first board row
+	private final int BOARD_LEFT = 3;		// terminal column of the first board column
+	private final int CELL_WIDTH = 2;		// terminal columns per slot
+	private final int UNKNOWN = -2;			// front buffer value that never matches a cell
+	private final int EMPTY = -1;
+
+	// letter and ANSI foreground colour of each piece, in the order of config.txt
+	private final char[] PIECE_GLYPH = {'D', 'K', 'L', 'S', 'T', 'F', 'W'};
+	private final int[] PIECE_COLOUR = {95, 90, 92, 93, 33, 91, 94};
+
+	// ANSI background colours a highlight colour is matched against
+	private final Color[] BACKGROUND_RGB = {Color.BLACK, Color.RED, Color.GREEN, Color.YELLOW,
+		Color.BLUE, Color.MAGENTA, Color.CYAN, Color.LIGHT_GRAY, Color.DARK_GRAY};
+	private final int[] BACKGROUND_CODE = {40, 41, 42, 43, 44, 45, 46, 47, 100};
+
+	private final OutputStream out;
+	private final int numRow, numCol;
+
+	// a cell is its piece + 1 in the low byte, its background code in the
+	// next byte (0 for none), CURSOR_BIT if the keyboard cursor is on it and
+	// HINT_BIT if it is the hinted slot
+	private final int CURSOR_BIT = 1 << 16;
+	private final int HINT_BIT = 1 << 17;
+	private final int HINT_BACKGROUND = 41;		// red; drawn over the slot's own highlight
+	private final int[] back;
+	private final int[] front;
+	private String title = "";
+	private String header = "";
+	private String status = "";
+	private String frontTitle, frontHeader, frontStatus;	// null until drawn
+
+	private int score, movesLeft;
+	private int cursorRow = -1, cursorCol = -1;
+	private int hintRow = -1, hintCol = -1;
+	private final StringBuilder messages = new StringBuilder();	// messages since the last frame
+	private boolean finished;
+
+	public TerminalDisplay(OutputStream out, int numRow, int numCol) {
+		this.out = out;
+		this.numRow = numRow;
+		this.numCol = numCol;
+		back = new int[numRow * numCol];
+		front = new int[numRow * numCol];
+		Arrays.fill(back, EMPTY + 1);
+		Arrays.fill(front, UNKNOWN);
+	}
+
+	public synchronized void setPiece(int row, int col, int piece) {
+		int slot = row * numCol + col;
+		back[slot] = (back[slot] & ~0xff) | (piece + 1);
+	}
+
+	public synchronized void highlightSlot(int row, int col, Color colour) {
+		int slot = row * numCol + col;
+		back[slot] = (back[slot] & ~0xff00) | (backgroundCode(colour) << 8);
+	}
+
+	public synchronized void unhighlightSlot(int row, int col) {
+		back[row * numCol + col] &= ~0xff00;
+	}
+
+	/**
+	* showSwap
+	* A swap is the next move, so the hint is taken down.
+	*/
+	public synchronized void showSwap(int row1, int col1, int row2, int col2) {
+		clearHint();
+	}
+
+	public void showFall(int row, int col) {
+	}
+
+	public boolean showsBoard() {
+		return true;
+	}
+
+	public synchronized void setScore(int point) {
+		score = point;
+	}
+
+	public synchronized void setMoveLeft(int num) {
+		movesLeft = num;
+	}
+
+	public void showInvalidSwapMessage() {
+		addMessage("That move does not result in any chain formations!");
+	}
+
+	public void showInvalidMoveMessage() {
+		addMessage("That move is invalid! Selected pieces must be adjacent to one another.");
+	}
+
+	/**
+	* showHintMessage
+	* Marks the hinted slot until the next swap.
+	*/
+	public synchronized void showHintMessage(int row, int column) {
+		clearHint();
+		hintRow = row;
+		hintCol = column;
+		back[row * numCol + column] |= HINT_BIT;
+		addMessage("Here's a hint!");
+	}
+
+	private void clearHint() {
+		if (hintRow >= 0) {
+			back[hintRow * numCol + hintCol] &= ~HINT_BIT;
+			hintRow = -1;
+		}
+	}
+
+	public void showChainSizeMessage(int chainSize) {
+		addMessage("Chain(s) formed! You earned " + chainSize + " points.");
+	}
+
+	public void showChainReactionMessage() {
+		addMessage("Chain reaction!");
+	}
+
+	public void showOutOfMovesMessage(int point) {
+		finish("Out of moves! You ended the game with " + point + " points.");
+	}
+
+	public void showNoMoreMovesMessage(int point, int numMove) {
+		finish("No more possible moves. You ended the game with " + point + " points after " + numMove + " moves.");
+	}
+
+	public void showGameOverMessage(int point, int numMove) {
+		finish("You got " + point + " points with " + numMove + " moves.");
+	}
+
+	/**
+	* setTitle
+	* Sets the text shown on the first line.
+	*/
+	public synchronized void setTitle(String text) {
+		title = text;
+	}
+
+	/**
+	* moveCursor
+	* Moves the keyboard cursor by the given number of rows and columns,
+	* stopping at the edges of the board. The cursor starts hidden and
+	* appears in the top left corner the first time it is moved.
+	*/
+	public synchronized void moveCursor(int rows, int cols) {
+		if (cursorRow < 0) {
+			cursorRow = 0;
+			cursorCol = 0;
+			return;
+		}
+		cursorRow = Math.max(0, Math.min(numRow - 1, cursorRow + rows));
+		cursorCol = Math.max(0, Math.min(numCol - 1, cursorCol + cols));
+	}
+
+	/**
+	* setCursor
+	* Puts the keyboard cursor on the given slot, e.g. where the mouse was
+	* clicked.
+	*/
+	public synchronized void setCursor(int row, int col) {
+		cursorRow = row;
+		cursorCol = col;
+	}
+
+	public synchronized int getCursorRow() {
+		return cursorRow;
+	}
+
+	public synchronized int getCursorCol() {
+		return cursorCol;
+	}
+
+	/**
+	* getRowAt
+	* Returns the board row shown on the given terminal line (counted from
+	* 1), or -1 if the line is not part of the board.
+	*/
+	public int getRowAt(int line) {
+		int row = line - BOARD_TOP;
+		return row >= 0 && row < numRow ? row : -1;
+	}
+
+	/**
+	* getColumnAt
+	* Returns the board column shown at the given terminal column (counted
+	* from 1), or -1 if it is not part of the board.
+	*/
+	public int getColumnAt(int column) {
+		int col = (column - BOARD_LEFT) / CELL_WIDTH;
+		return column >= BOARD_LEFT && col < numCol ? col : -1;
+	}
+
+	/**
+	* Returns true once the game has told the player that it is over.
+	*/
+	public synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	* clearScreen
+	* Clears the terminal and forgets what it showed, so the next frame
+	* draws everything again.
+	*/
+	public synchronized void clearScreen() {
+		Arrays.fill(front, UNKNOWN);
+		frontTitle = null;
+		frontHeader = null;
+		frontStatus = null;
+		write(ESC + "0m" + ESC + "2J");
+	}
+
+	/**
+	* renderFrame
+	* Writes the difference between what the terminal shows and the current
+	* state of the game, and flushes it in one go. The messages given since
+	* the last frame become the status line and stay on screen until the next
+	* frame.
+	*/
+	public synchronized void renderFrame() {
+		if (cursorRow >= 0) {
+			back[cursorRow * numCol + cursorCol] |= CURSOR_BIT;
+		}
+		header = "Score: " + score + "   Moves left: " + movesLeft;
+		status = messages.toString();
+		messages.setLength(0);
+
+		StringBuilder frame = new StringBuilder();
+		int lastSlot = -2;		// slot the terminal cursor is after, if it is in the same row
+		int lastStyle = -1;		// colours of the last cell written
+		for (int slot = 0; slot < back.length; slot++) {
+			int cell = back[slot];
+			if (cell == front[slot]) {
+				continue;
+			}
+			if (slot != lastSlot + 1 || slot % numCol == 0) {
+				moveTo(frame, BOARD_TOP + slot / numCol, BOARD_LEFT + (slot % numCol) * CELL_WIDTH);
+			}
+			int style = cell & ~0xff;
+			int piece = (cell & 0xff) - 1;
+			if (piece >= 0) {
+				style |= PIECE_COLOUR[piece % PIECE_COLOUR.length] << 24;
+			}
+			if (style != lastStyle) {
+				frame.append(ESC).append("0");
+				if (piece >= 0) {
+					frame.append(";1;").append(style >>> 24);
+				}
+				int background = (cell & HINT_BIT) != 0 ? HINT_BACKGROUND : (cell >> 8) & 0xff;
+				if (background != 0) {
+					frame.append(';').append(background);
+				}
+				if ((cell & CURSOR_BIT) != 0) {
+					frame.append(";7");
+				}
+				frame.append('m');
+				lastStyle = style;
+			}
+			frame.append(glyph(piece)).append(' ');
+			front[slot] = cell;
+			lastSlot = slot;
+		}
+		if (lastStyle != -1) {
+			frame.append(ESC).append("0m");
+		}
+		if (!title.equals(frontTitle)) {
+			writeLine(frame, 1, title);
+			frontTitle = title;
+		}
+		if (!header.equals(frontHeader)) {
+			writeLine(frame, 2, header);
+			frontHeader = header;
+		}
+		if (!status.equals(frontStatus)) {
+			writeLine(frame, BOARD_TOP + numRow + 1, status);
+			frontStatus = status;
+		}
+
+		if (cursorRow >= 0) {
+			back[cursorRow * numCol + cursorCol] &= ~CURSOR_BIT;
+		}
+		if (frame.length() > 0) {
+			write(frame.toString());
+		}
+	}
+
+	/**
+	* Returns the escape sequence that moves the terminal cursor to the line
+	* below everything the display draws.
+	*/
+	public String getEndOfScreen() {
+		return ESC + "0m" + ESC + (BOARD_TOP + numRow + 2) + ";1H";
+	}
+
+	private synchronized void addMessage(String message) {
+		if (messages.length() > 0) {
+			messages.append("  ");
+		}
+		messages.append(message);
+	}
+
+	private synchronized void finish(String message) {
+		addMessage(message + " Thanks for playing!");
+		finished = true;
+	}
+
+	private char glyph(int piece) {
+		if (piece < 0) {
+			return '.';
+		}
+		return piece < PIECE_GLYPH.length ? PIECE_GLYPH[piece] : (char) ('a' + piece - PIECE_GLYPH.length);
+	}
+
+	/**
+	* backgroundCode
+	* Returns the ANSI background colour closest to the given colour.
+	*/
+	private int backgroundCode(Color colour) {
+		int best = 0;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < BACKGROUND_RGB.length; i++) {
+			int red = colour.getRed() - BACKGROUND_RGB[i].getRed();
+			int green = colour.getGreen() - BACKGROUND_RGB[i].getGreen();
+			int blue = colour.getBlue() - BACKGROUND_RGB[i].getBlue();
+			int distance = red * red + green * green + blue * blue;
+			if (distance < bestDistance) {
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		return BACKGROUND_CODE[best];
+	}
+
+	private void moveTo(StringBuilder frame, int line, int column) {
+		frame.append(ESC).append(line).append(';').append(column).append('H');
+	}
+
+	private void writeLine(StringBuilder frame, int line, String text) {
+		moveTo(frame, line, 1);
+		frame.append(text).append(ESC).append('K');
+	}
+
+	private void write(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		try {
+			out.write(bytes);
+			out.flush();
+		} catch (IOException iox) {
+			System.out.println("Error writing to the terminal: " + iox.getMessage());
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+* TerminalInput.java
+* Reads keys and mouse clicks from a terminal in raw mode and turns their
+* escape sequences into key codes. Mouse clicks are understood both in the
+* original xterm encoding (ESC [ M) and in the SGR encoding (ESC [ <) that
+* terminals use for columns beyond 223.
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TerminalInput {
+	public static final int END = -1;		// the input was closed
+	public static final int OTHER = 0;		// a key that means nothing to the game
+	public static final int UP = 1;
+	public static final int DOWN = 2;
+	public static final int LEFT = 3;
+	public static final int RIGHT = 4;
+	public static final int SELECT = 5;		// space or enter
+	public static final int HINT = 6;		// h
+	public static final int QUIT = 7;		// q or ctrl-C
+	public static final int REDRAW = 8;		// ctrl-L
+	public static final int CLICK = 9;		// left mouse button pressed, see getMouseLine/Column
+
+	private final InputStream in;
+	private int mouseLine, mouseColumn;
+
+	public TerminalInput(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	* read
+	* Blocks until the next key or click and returns its code.
+	*/
+	public int read() throws IOException {
+		int c = in.read();
+		switch (c) {
+			case -1:
+				return END;
+			case ' ':
+			case '\r':
+			case '\n':
+				return SELECT;
+			case 'h':
+			case 'H':
+				return HINT;
+			case 'q':
+			case 'Q':
+			case 3:
+				return QUIT;
+			case 12:
+				return REDRAW;
+			case 27:
+				return readEscape();
+			default:
+				return OTHER;
+		}
+	}
+
+	/**
+	* Returns the terminal line of the last click, counted from 1.
+	*/
+	public int getMouseLine() {
+		return mouseLine;
+	}
+
+	/**
+	* Returns the terminal column of the last click, counted from 1.
+	*/
+	public int getMouseColumn() {
+		return mouseColumn;
+	}
+
+	private int readEscape() throws IOException {
+		// a lone escape key has nothing following it
+		if (in.available() == 0 || in.read() != '[') {
+			return OTHER;
+		}
+		int c = in.read();
+		switch (c) {
+			case 'A':
+				return UP;
+			case 'B':
+				return DOWN;
+			case 'C':
+				return RIGHT;
+			case 'D':
+				return LEFT;
+			case 'M':
+				// ESC [ M button column line, each byte offset by 32
+				int button = in.read() - 32;
+				int column = in.read() - 32;
+				int line = in.read() - 32;
+				return click(button, column, line, true);
+			case '<':
+				// ESC [ < button ; column ; line M for a press, m for a release
+				int[] values = new int[3];
+				int value = 0, index = 0;
+				while ((c = in.read()) != 'M' && c != 'm') {
+					if (c < 0) {
+						return END;
+					} else if (c == ';') {
+						if (index < 2) {
+							values[index++] = value;
+						}
+						value = 0;
+					} else {
+						value = value * 10 + (c - '0');
+					}
+				}
+				values[2] = value;
+				return click(values[0], values[1], values[2], c == 'M');
+			default:
+				return c < 0 ? END : OTHER;
+		}
+	}
+
+	private int click(int button, int column, int line, boolean pressed) {
+		// only presses of the left button without motion or the scroll wheel
+		if (!pressed || (button & 0x63) != 0) {
+			return OTHER;
+		}
+		mouseLine = line;
+		mouseColumn = column;
+		return CLICK;
+	}
+}
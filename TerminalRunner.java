@@ -0,0 +1,229 @@
+/**
+* TerminalRunner.java
+* Runs the Bejeweled game in a text terminal, e.g. over SSH on a machine
+* without a screen. Move the cursor with the arrow keys and select with space
+* or enter, or click on the pieces; h shows a hint and q ends the game.
+*
+* With --watch, it shows a game that is being played elsewhere and streamed
+* by a SpectatorServer instead. Run with -Dbejeweled.spectatorPort=port to
+* stream the terminal game itself. The pieces and cascades are set up with
+* the same options as in BejeweledRunner.
+*
+* Usage: java TerminalRunner [numRow numCol numPieceStyle]
+*        java TerminalRunner --watch port [host]
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class TerminalRunner {
+	private static final String ESC = "\u001b[";
+	private static final String MOUSE_ON = ESC + "?1000h" + ESC + "?1006h";		// report clicks, in SGR encoding if possible
+	private static final String MOUSE_OFF = ESC + "?1006l" + ESC + "?1000l";
+	private static final String CURSOR_OFF = ESC + "?25l";
+	private static final String CURSOR_ON = ESC + "?25h";
+
+	/**
+	* WatchedBoard
+	* A spectator board that passes every change straight on to a display,
+	* so a message costs as much as the slots it changes.
+	*/
+	private static class WatchedBoard extends SpectatorBoard {
+		final OutputStream out;
+		final String title;
+		TerminalDisplay display;
+
+		WatchedBoard(OutputStream out, String title) {
+			this.out = out;
+			this.title = title;
+		}
+
+		void reset(long sequence, int numRow, int numCol, int[] pieces, int score, int movesLeft) {
+			if (display == null || numRow != getNumRow() || numCol != getNumCol()) {
+				display = new TerminalDisplay(out, numRow, numCol);
+				display.setTitle(title);
+				display.clearScreen();
+			}
+			super.reset(sequence, numRow, numCol, pieces, score, movesLeft);
+			for (int slot = 0; slot < pieces.length; slot++) {
+				display.setPiece(slot / numCol, slot % numCol, pieces[slot]);
+			}
+			display.setScore(score);
+			display.setMoveLeft(movesLeft);
+		}
+
+		void setPiece(int slot, int piece) {
+			super.setPiece(slot, piece);
+			display.setPiece(slot / getNumCol(), slot % getNumCol(), piece);
+		}
+
+		void update(long sequence, int score, int movesLeft) {
+			super.update(sequence, score, movesLeft);
+			display.setScore(score);
+			display.setMoveLeft(movesLeft);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--watch")) {
+			if (args.length < 2) {
+				System.out.println("Usage: java TerminalRunner --watch port [host]");
+				return;
+			}
+			watch(args.length > 2 ? args[2] : "localhost", Integer.parseInt(args[1]));
+			return;
+		}
+
+		int numRow = 8, numCol = 8, numPieceStyle = 7;
+		if (args.length >= 3) {
+			numRow = Integer.parseInt(args[0]);
+			numCol = Integer.parseInt(args[1]);
+			numPieceStyle = Integer.parseInt(args[2]);
+		}
+		play(numRow, numCol, numPieceStyle);
+	}
+
+	private static void play(int numRow, int numCol, int numPieceStyle) throws IOException {
+		final String savedMode = stty("-g");
+		if (savedMode == null) {
+			System.out.println("TerminalRunner must be run in a terminal.");
+			return;
+		}
+
+		final OutputStream out = new FileOutputStream(FileDescriptor.out);
+		final TerminalDisplay display = new TerminalDisplay(out, numRow, numCol);
+		display.setTitle("Bejeweled - arrows/mouse: move   space: select   h: hint   q: end game");
+		BejeweledDisplay gameDisplay = display;
+		int spectatorPort = Integer.getInteger("bejeweled.spectatorPort", 0);
+		if (spectatorPort > 0) {
+			try {
+				SpectatorServer server = new SpectatorServer(display, numRow, numCol, spectatorPort);
+				server.start();
+				gameDisplay = server;
+			} catch (IOException iox) {
+				System.out.println("Error starting the spectator server: " + iox.getMessage());
+			}
+		}
+
+		stty("raw", "-echo");
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				write(out, MOUSE_OFF + CURSOR_ON + display.getEndOfScreen());
+				stty(savedMode.trim());
+			}
+		});
+		write(out, CURSOR_OFF + MOUSE_ON);
+		display.clearScreen();
+
+		Bejeweled game = new Bejeweled(gameDisplay, numRow, numCol, numPieceStyle, new RefillSequence(), CascadeResolver.fromProperties(),
+			PieceDistribution.fromProperties(numPieceStyle));
+		game.setBalancing(Double.parseDouble(System.getProperty("bejeweled.balance", "0")));
+		TerminalInput input = new TerminalInput(System.in);
+		while (!display.isFinished()) {
+			display.renderFrame();
+			switch (input.read()) {
+				case TerminalInput.UP:
+					display.moveCursor(-1, 0);
+					break;
+				case TerminalInput.DOWN:
+					display.moveCursor(1, 0);
+					break;
+				case TerminalInput.LEFT:
+					display.moveCursor(0, -1);
+					break;
+				case TerminalInput.RIGHT:
+					display.moveCursor(0, 1);
+					break;
+				case TerminalInput.SELECT:
+					if (display.getCursorRow() < 0) {
+						display.moveCursor(0, 0);
+					} else {
+						game.play(display.getCursorRow(), display.getCursorCol());
+					}
+					break;
+				case TerminalInput.CLICK:
+					int row = display.getRowAt(input.getMouseLine());
+					int col = display.getColumnAt(input.getMouseColumn());
+					if (row >= 0 && col >= 0) {
+						display.setCursor(row, col);
+						game.play(row, col);
+					}
+					break;
+				case TerminalInput.HINT:
+					game.displayHint();
+					break;
+				case TerminalInput.REDRAW:
+					display.clearScreen();
+					break;
+				case TerminalInput.QUIT:
+				case TerminalInput.END:
+					game.endGame();
+					break;
+				default:
+			}
+		}
+		display.renderFrame();
+		System.exit(0);
+	}
+
+	private static void watch(String host, int port) throws IOException {
+		final OutputStream out = new FileOutputStream(FileDescriptor.out);
+		final WatchedBoard board = new WatchedBoard(out, "Watching " + host + ":" + port + " - ctrl-C to stop");
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				write(out, CURSOR_ON + (board.display != null ? board.display.getEndOfScreen() : "\n"));
+			}
+		});
+		write(out, CURSOR_OFF);
+
+		SpectatorClient client = new SpectatorClient(host, port);
+		ByteBuffer message;
+		while ((message = client.readMessage()) != null) {
+			if (BoardDeltaCodec.apply(message, board)) {
+				board.display.renderFrame();
+			}
+		}
+		client.close();
+	}
+
+	/**
+	* stty
+	* Runs stty on the controlling terminal and returns what it printed, or
+	* null if it failed (e.g. because there is no terminal).
+	*/
+	private static String stty(String... args) {
+		String[] command = new String[args.length + 1];
+		command[0] = "stty";
+		System.arraycopy(args, 0, command, 1, args.length);
+		try {
+			Process process = new ProcessBuilder(command).redirectInput(new File("/dev/tty")).start();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			InputStream in = process.getInputStream();
+			byte[] buffer = new byte[256];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				output.write(buffer, 0, n);
+			}
+			return process.waitFor() == 0 ? output.toString() : null;
+		} catch (IOException iox) {
+			return null;
+		} catch (InterruptedException ie) {
+			return null;
+		}
+	}
+
+	private static void write(OutputStream out, String text) {
+		try {
+			out.write(text.getBytes("UTF-8"));
+			out.flush();
+		} catch (IOException iox) {
+			System.out.println("Error writing to the terminal: " + iox.getMessage());
+		}
+	}
+}
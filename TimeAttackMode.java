@@ -0,0 +1,427 @@
+/**
+* TimeAttackMode.java
+* A real-time version of the game: instead of a fixed number of moves, the
+* player makes as many swaps as they can before the time runs out.
+*
+* The game is driven by a clock that ticks TICK_RATE times a second. On each
+* tick the mode takes the player's queued input and then works on the current
+* cascade for at most TICK_BUDGET nanoseconds. A cascade is broken into small
+* steps (fill one column, remove the chains in a band of rows) that are run by a
+* CascadeScheduler, so on big boards a long cascade is spread over several
+* ticks instead of freezing one. New swaps wait in the queue until the
+* cascade they would interfere with is over, and so do hints, since the board
+* can only be analysed once its empty slots are filled. The "End Game" button
+* goes through the queue too. When a cascade is over and no swap would form a
+* chain, the game ends.
+*
+* The time each tick took is recorded, together with how many ticks went
+* over their budget and how many were skipped because the previous one had
+* not started yet, to show when the engine can't keep up.
+*/
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimeAttackMode {
+	public static final int TICK_RATE = 60;								// ticks per second
+	public static final long TICK_PERIOD = 1000000000L / TICK_RATE;		// nanoseconds per tick
+	public static final long TICK_BUDGET = TICK_PERIOD / 2;				// nanoseconds of game work per tick; the rest is left for drawing
+	public static final int HINT_TICKS = TICK_RATE * 3 / 2;				// ticks a hint stays highlighted
+
+	private final int HINT = 0;			// input asking for a hint
+	private final int END_GAME = 1;		// input ending the game
+	private final int CLEAR_STEP_SLOTS = 1 << 14;	// slots looked at by one step that removes chains
+
+	private final Bejeweled game;
+	private final BejeweledDisplay display;
+	private final long durationNanos;
+	private final Executor tickExecutor;		// the thread ticks run on
+	private final CascadeScheduler scheduler;
+	private final ConcurrentLinkedQueue<Input> input;
+
+	private ScheduledExecutorService clock;
+	private final AtomicBoolean tickPending = new AtomicBoolean();
+	private long startNanos;
+	private volatile boolean over;
+	private int numSwaps;
+	private int roundChainLength;		// length of the chains removed so far in this round of the cascade
+	private int secondsShown;
+
+	// selection state of click input, only used on the tick thread
+	private boolean firstSelection = true;
+	private int slot1Row, slot1Col;
+
+	// the hint shown, only used on the tick thread
+	private int hintRow, hintCol;
+	private int hintTicksLeft;
+
+	/**
+	* One queued input.
+	*/
+	private static class Input {
+		final int[] args;			// {row, col} to select, {row1, col1, row2, col2} to swap, {HINT} or {END_GAME}
+		final Runnable handled;		// run on the tick thread right after the input was handled, or null
+
+		Input(int[] args, Runnable handled) {
+			this.args = args;
+			this.handled = handled;
+		}
+	}
+
+	private final LatencyHistogram tickWork = new LatencyHistogram();
+	private final AtomicLong numTicks = new AtomicLong();
+	private final AtomicLong numOverruns = new AtomicLong();
+	private final AtomicLong numSkipped = new AtomicLong();
+
+	/**
+	* Creates a time attack lasting the given number of seconds. The game's
+	* display should not show modal dialogs (see QuietDisplay); it is also
+	* used to show the seconds left in place of the moves left. Ticks run on
+	* tickExecutor, which must be the thread the rest of the game is played on
+	* (for the window, InputPipeline's game thread).
+	*/
+	public TimeAttackMode(Bejeweled game, BejeweledDisplay display, int seconds, Executor tickExecutor) {
+		this.game = game;
+		this.display = display;
+		this.durationNanos = seconds * 1000000000L;
+		this.tickExecutor = tickExecutor;
+		scheduler = new CascadeScheduler();
+		input = new ConcurrentLinkedQueue<Input>();
+		// the first board may have no moves at all
+		scheduler.add(new Runnable() {
+			public void run() {
+				checkForMoves();
+			}
+		});
+	}
+
+	public void start() {
+		startNanos = System.nanoTime();
+		clock = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "time-attack-clock");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		clock.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				// if the last tick has not even started, the tick thread is behind; skip this one
+				if (!tickPending.compareAndSet(false, true)) {
+					numSkipped.incrementAndGet();
+					return;
+				}
+				tickExecutor.execute(new Runnable() {
+					public void run() {
+						tickPending.set(false);
+						tick();
+					}
+				});
+			}
+		}, 0, TICK_PERIOD, TimeUnit.NANOSECONDS);
+	}
+
+	public void stop() {
+		if (clock != null) {
+			clock.shutdownNow();
+		}
+	}
+
+	/**
+	* submitSelect
+	* Queues a click on a piece. Clicking two adjacent pieces swaps them.
+	* Can be called from any thread. Like for the other inputs, handled (if
+	* not null) is run on the tick thread as soon as the click was handled.
+	*/
+	public void submitSelect(int row, int col, Runnable handled) {
+		input.add(new Input(new int[] {row, col}, handled));
+	}
+
+	/**
+	* submitSwap
+	* Queues a swap of two pieces. Can be called from any thread.
+	*/
+	public void submitSwap(int row1, int col1, int row2, int col2, Runnable handled) {
+		input.add(new Input(new int[] {row1, col1, row2, col2}, handled));
+	}
+
+	/**
+	* submitHint
+	* Queues a request for a hint, which is shown once the current cascade is
+	* over. Can be called from any thread.
+	*/
+	public void submitHint(Runnable handled) {
+		input.add(new Input(new int[] {HINT}, handled));
+	}
+
+	/**
+	* submitEndGame
+	* Queues the end of the game. Can be called from any thread.
+	*/
+	public void submitEndGame(Runnable handled) {
+		input.add(new Input(new int[] {END_GAME}, handled));
+	}
+
+	/**
+	* tick
+	* Runs one frame of the game. Must be called on the tick thread.
+	*/
+	void tick() {
+		long tickStart = System.nanoTime();
+		if (over) {
+			return;
+		}
+		if (tickStart - startNanos >= durationNanos) {
+			end();
+			display.showGameOverMessage(game.score, numSwaps);
+			return;
+		}
+		showSecondsLeft(tickStart);
+
+		handleInput();
+		if (over) {
+			return;
+		}
+		scheduler.runFor(TICK_BUDGET - (System.nanoTime() - tickStart));
+		if (hintTicksLeft > 0 && --hintTicksLeft == 0) {
+			clearHint();
+		}
+
+		long work = System.nanoTime() - tickStart;
+		tickWork.record(work);
+		numTicks.incrementAndGet();
+		if (work > TICK_BUDGET) {
+			numOverruns.incrementAndGet();
+		}
+	}
+
+	/**
+	* handleInput
+	* Handles queued input in order. Stops at the first input that would swap
+	* pieces or ask for a hint while the current cascade is still going; it
+	* waits for the next tick.
+	*/
+	private void handleInput() {
+		Input queued;
+		while (!over && (queued = input.peek()) != null) {
+			int[] next = queued.args;
+			boolean waits;
+			if (next.length == 1) {
+				waits = next[0] == HINT;
+			} else {
+				waits = next.length == 4 || (!firstSelection && (slot1Row != next[0] || slot1Col != next[1]));
+			}
+			if (waits && !scheduler.isIdle()) {
+				return;
+			}
+			input.poll();
+			if (next.length == 1) {
+				if (next[0] == HINT) {
+					showHint();
+				} else {
+					end();
+					display.showGameOverMessage(game.score, numSwaps);
+				}
+			} else if (next.length == 2) {
+				select(next[0], next[1]);
+			} else {
+				clearSelection();
+				swap(next[0], next[1], next[2], next[3]);
+			}
+			if (queued.handled != null) {
+				queued.handled.run();
+			}
+		}
+	}
+
+	private void end() {
+		over = true;
+		stop();
+	}
+
+	/**
+	* showHint
+	* Highlights the first piece of the best move for HINT_TICKS ticks. Must
+	* only be called between cascades, when the board has no empty slots.
+	*/
+	private void showHint() {
+		BoardAnalysis analysis = game.analyzeBoard();
+		if (!analysis.hasValidMove()) {
+			return;
+		}
+		if (hintTicksLeft > 0) {
+			clearHint();
+		}
+		int[] bestMove = analysis.getBestMove();
+		hintRow = bestMove[0];
+		hintCol = bestMove[1];
+		hintTicksLeft = HINT_TICKS;
+		display.highlightSlot(hintRow, hintCol, game.HINT_COLOUR);
+	}
+
+	/**
+	* clearHint
+	* Unhighlights the hint, unless the player has selected that piece since.
+	*/
+	private void clearHint() {
+		hintTicksLeft = 0;
+		if (firstSelection || slot1Row != hintRow || slot1Col != hintCol) {
+			display.unhighlightSlot(hintRow, hintCol);
+		}
+	}
+
+	/**
+	* select
+	* Works like Bejeweled.play: the first click selects a piece, a second
+	* click on the same piece unselects it and a click on another piece swaps.
+	*/
+	private void select(int row, int col) {
+		if (firstSelection) {
+			slot1Row = row;
+			slot1Col = col;
+			display.highlightSlot(row, col, game.SELECT_COLOUR);
+			firstSelection = false;
+		} else {
+			clearSelection();
+			if (slot1Row != row || slot1Col != col) {
+				swap(slot1Row, slot1Col, row, col);
+			}
+		}
+	}
+
+	private void clearSelection() {
+		if (!firstSelection) {
+			display.unhighlightSlot(slot1Row, slot1Col);
+			firstSelection = true;
+		}
+	}
+
+	private void swap(int row1, int col1, int row2, int col2) {
+		if (game.swapWithoutCascade(row1, col1, row2, col2)) {
+			numSwaps++;
+			scheduleCascade();
+		}
+	}
+
+	/**
+	* scheduleCascade
+	* Queues a step to fill every column, followed by steps that remove the
+	* chains the fall formed, a band of rows at a time from the top, and a
+	* step that scores them and, if there were any, schedules the next round.
+	* A game with a CascadeResolver removes all chains in one step, since the
+	* resolver does that on all processors at once.
+	*/
+	private void scheduleCascade() {
+		for (int column = 0; column < game.NUMCOL; column++) {
+			final int col = column;
+			scheduler.add(new Runnable() {
+				public void run() {
+					game.fillColumn(col);
+				}
+			});
+		}
+		if (game.resolver != null) {
+			scheduler.add(new Runnable() {
+				public void run() {
+					finishRound(game.clearChains(false));
+				}
+			});
+			return;
+		}
+		int bandRows = Math.max(game.MIN_CHAIN_LENGTH, CLEAR_STEP_SLOTS / game.NUMCOL);
+		for (int row = 0; row < game.NUMROW; row += bandRows) {
+			final int fromRow = row;
+			final int toRow = Math.min(game.NUMROW, row + bandRows);
+			scheduler.add(new Runnable() {
+				public void run() {
+					roundChainLength += game.clearChainsInRows(fromRow, toRow);
+				}
+			});
+		}
+		scheduler.add(new Runnable() {
+			public void run() {
+				int chainLength = roundChainLength;
+				roundChainLength = 0;
+				finishRound(chainLength);
+			}
+		});
+	}
+
+	/**
+	* finishRound
+	* Scores the chains removed in a round of the cascade and starts the next
+	* round, or checks for moves if the cascade is over.
+	*/
+	private void finishRound(int chainLength) {
+		game.scoreChainReaction(chainLength);
+		if (chainLength != 0) {
+			scheduleCascade();
+		} else {
+			checkForMoves();
+		}
+	}
+
+	/**
+	* checkForMoves
+	* Ends the game if no swap would form a chain. Must only be called
+	* between cascades.
+	*/
+	private void checkForMoves() {
+		if (!game.hasValidMove()) {
+			end();
+			display.showNoMoreMovesMessage(game.score, numSwaps);
+		}
+	}
+
+	private void showSecondsLeft(long now) {
+		int secondsLeft = (int) ((durationNanos - (now - startNanos) + 999999999L) / 1000000000L);
+		if (secondsLeft != secondsShown) {
+			secondsShown = secondsLeft;
+			display.setMoveLeft(secondsLeft);
+		}
+	}
+
+	public boolean isOver() {
+		return over;
+	}
+
+	public int getNumSwaps() {
+		return numSwaps;
+	}
+
+	/**
+	* Returns how long the game work of each tick took.
+	*/
+	public LatencyHistogram getTickWork() {
+		return tickWork;
+	}
+
+	public long getNumTicks() {
+		return numTicks.get();
+	}
+
+	/**
+	* Returns the number of ticks whose game work took longer than TICK_BUDGET.
+	*/
+	public long getNumOverruns() {
+		return numOverruns.get();
+	}
+
+	/**
+	* Returns the number of ticks skipped because the tick thread was still
+	* busy with an earlier one.
+	*/
+	public long getNumSkipped() {
+		return numSkipped.get();
+	}
+
+	public String toString() {
+		return "ticks=" + getNumTicks() + " overruns=" + getNumOverruns() + " skipped=" + getNumSkipped() + " work: " + tickWork;
+	}
+}
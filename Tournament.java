@@ -0,0 +1,204 @@
+/**
+* Tournament.java
+* Plays every bot on the same set of seeded boards, using all processors, and
+* reports each bot's scores and how long it took to decide on its moves.
+* Because every bot gets exactly the same boards and refills, the results of
+* two runs can be compared to see whether a change made a bot (or the game)
+* weaker or slower. Run with -Dbejeweled.parallel=true to resolve the
+* cascades of every game on all processors, e.g. on very large boards.
+*
+* Usage: java Tournament [numGames [numRow numCol numPieceStyle]]
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Tournament {
+	private final int numRow, numCol, numPieceStyle;
+	private final CascadeResolver resolver;		// null for the original code
+	private final Map<String, StrategyFactory> entrants = new LinkedHashMap<String, StrategyFactory>();
+
+	/**
+	* Makes a new bot for every game. The seed is different for every game,
+	* so bots that use random numbers still play the same way every run.
+	*/
+	public interface StrategyFactory {
+		Strategy create(long seed);
+	}
+
+	/**
+	* The results of one bot.
+	*/
+	public static class Result {
+		public final String name;
+		public final int[] scores;				// sorted
+		public final LatencyHistogram decisionTime;
+		public final int numInvalidMoves;
+
+		Result(String name, int[] scores, LatencyHistogram decisionTime, int numInvalidMoves) {
+			this.name = name;
+			this.scores = scores;
+			this.decisionTime = decisionTime;
+			this.numInvalidMoves = numInvalidMoves;
+		}
+
+		public double getMeanScore() {
+			long total = 0;
+			for (int score : scores) {
+				total += score;
+			}
+			return scores.length == 0 ? 0 : (double) total / scores.length;
+		}
+
+		/**
+		* Returns the score that the given percentage (0 to 100) of games did not beat.
+		*/
+		public int getScorePercentile(double percentile) {
+			if (scores.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(scores.length * percentile / 100) - 1;
+			return scores[Math.max(0, Math.min(scores.length - 1, index))];
+		}
+
+		public String toString() {
+			return String.format("%-10s mean=%8.1f p10=%5d p50=%5d p90=%5d  decision: mean=%.3fms p50=%.3fms p99=%.3fms%s",
+				name, getMeanScore(), getScorePercentile(10), getScorePercentile(50), getScorePercentile(90),
+				decisionTime.getMeanNanos() / 1e6, decisionTime.getPercentileNanos(50) / 1e6,
+				decisionTime.getPercentileNanos(99) / 1e6,
+				numInvalidMoves > 0 ? "  invalid moves: " + numInvalidMoves : "");
+		}
+	}
+
+	/**
+	* The result of one game.
+	*/
+	private static class GameResult {
+		final int score;
+		final boolean invalidMove;
+
+		GameResult(int score, boolean invalidMove) {
+			this.score = score;
+			this.invalidMove = invalidMove;
+		}
+	}
+
+	public Tournament(int numRow, int numCol, int numPieceStyle) {
+		this.numRow = numRow;
+		this.numCol = numCol;
+		this.numPieceStyle = numPieceStyle;
+		resolver = CascadeResolver.fromProperties();
+	}
+
+	public void addEntrant(String name, StrategyFactory factory) {
+		entrants.put(name, factory);
+	}
+
+	/**
+	* run
+	* Plays numGames games for every bot, on the boards seeded firstSeed,
+	* firstSeed + 1, and so on. Returns the results in the order the bots
+	* were added.
+	*/
+	public List<Result> run(int numGames, long firstSeed) throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			Map<String, List<Future<GameResult>>> games = new LinkedHashMap<String, List<Future<GameResult>>>();
+			Map<String, LatencyHistogram> decisionTimes = new LinkedHashMap<String, LatencyHistogram>();
+			for (Map.Entry<String, StrategyFactory> entrant : entrants.entrySet()) {
+				List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+				LatencyHistogram decisionTime = new LatencyHistogram();
+				for (int i = 0; i < numGames; i++) {
+					futures.add(pool.submit(playTask(entrant.getValue(), firstSeed + i, decisionTime)));
+				}
+				games.put(entrant.getKey(), futures);
+				decisionTimes.put(entrant.getKey(), decisionTime);
+			}
+
+			List<Result> results = new ArrayList<Result>();
+			for (Map.Entry<String, List<Future<GameResult>>> entry : games.entrySet()) {
+				int[] scores = new int[numGames];
+				int numInvalidMoves = 0;
+				for (int i = 0; i < numGames; i++) {
+					GameResult game = entry.getValue().get(i).get();
+					scores[i] = game.score;
+					if (game.invalidMove) {
+						numInvalidMoves++;
+					}
+				}
+				Arrays.sort(scores);
+				results.add(new Result(entry.getKey(), scores, decisionTimes.get(entry.getKey()), numInvalidMoves));
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Callable<GameResult> playTask(final StrategyFactory factory, final long seed, final LatencyHistogram decisionTime) {
+		return new Callable<GameResult>() {
+			public GameResult call() {
+				return play(factory.create(seed), seed, decisionTime);
+			}
+		};
+	}
+
+	/**
+	* play
+	* Plays one game until the bot runs out of moves, stops or makes an
+	* invalid move, which ends its game.
+	*/
+	private GameResult play(Strategy strategy, long seed, LatencyHistogram decisionTime) {
+		Bejeweled game = new Bejeweled(new HeadlessDisplay(), numRow, numCol, numPieceStyle, new RefillSequence(seed), resolver);
+		BoardView view = game.getView();
+		while (!game.isGameOver()) {
+			long start = System.nanoTime();
+			int[] move = strategy.chooseMove(view);
+			decisionTime.record(System.nanoTime() - start);
+			if (move == null) {
+				break;
+			}
+			if (!game.swap(move[0], move[1], move[2], move[3])) {
+				return new GameResult(game.score, true);
+			}
+		}
+		return new GameResult(game.score, false);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numGames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int numRow = args.length > 3 ? Integer.parseInt(args[1]) : 8;
+		int numCol = args.length > 3 ? Integer.parseInt(args[2]) : 8;
+		int numPieceStyle = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+
+		Tournament tournament = new Tournament(numRow, numCol, numPieceStyle);
+		tournament.addEntrant("random", new StrategyFactory() {
+			public Strategy create(long seed) {
+				return new RandomStrategy(seed);
+			}
+		});
+		tournament.addEntrant("greedy", new StrategyFactory() {
+			public Strategy create(long seed) {
+				return new GreedyStrategy();
+			}
+		});
+		tournament.addEntrant("lookahead", new StrategyFactory() {
+			public Strategy create(long seed) {
+				return new LookaheadStrategy(seed);
+			}
+		});
+
+		System.out.println(numGames + " games per bot on " + numRow + "x" + numCol + " boards with " + numPieceStyle + " piece styles:");
+		for (Result result : tournament.run(numGames, 1)) {
+			System.out.println(result);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**
+* TranspositionTable.java
+* Remembers, for each position hash, the largest number of moves that has
+* already been searched from that position without reaching the target. It is
+* shared by all solver threads, so the table is split into stripes that each
+* have their own lock; threads working on different positions rarely wait for
+* each other.
+*/
+
+import java.util.HashMap;
+
+public class TranspositionTable {
+	/**
+	* One independently locked part of the table.
+	*/
+	private static class Stripe {
+		final HashMap<Long, Integer> entries = new HashMap<Long, Integer>();
+	}
+
+	private final Stripe[] stripes;
+	private final int maxEntriesPerStripe;
+
+	public TranspositionTable(int numStripes, int maxEntries) {
+		// round up to a power of two so a stripe can be picked with a mask
+		int size = Integer.highestOneBit(Math.max(1, numStripes - 1)) << 1;
+		stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe();
+		}
+		maxEntriesPerStripe = Math.max(1, maxEntries / size);
+	}
+
+	/**
+	* wasSearched
+	* Returns true if the position was already searched at least depth moves deep.
+	*/
+	public boolean wasSearched(long hash, int depth) {
+		Stripe stripe = stripeFor(hash);
+		synchronized (stripe) {
+			Integer searched = stripe.entries.get(hash);
+			return searched != null && searched >= depth;
+		}
+	}
+
+	/**
+	* recordSearched
+	* Records that the position was searched depth moves deep without success.
+	* When a stripe is full it is emptied; the entries are only a shortcut, so
+	* losing them costs time but never changes the result.
+	*/
+	public void recordSearched(long hash, int depth) {
+		Stripe stripe = stripeFor(hash);
+		synchronized (stripe) {
+			if (stripe.entries.size() >= maxEntriesPerStripe) {
+				stripe.entries.clear();
+			}
+			Integer searched = stripe.entries.get(hash);
+			if (searched == null || searched < depth) {
+				stripe.entries.put(hash, depth);
+			}
+		}
+	}
+
+	private Stripe stripeFor(long hash) {
+		return stripes[(int)(hash ^ (hash >>> 32)) & (stripes.length - 1)];
+	}
+}
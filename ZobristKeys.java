@@ -0,0 +1,43 @@
+/**
+* ZobristKeys.java
+* Zobrist hashing for game boards. Every (slot, piece) pair has a random 64-bit
+* key and the hash of a board is the XOR of the keys of all its slots, so
+* changing one slot only takes two XORs to update the hash.
+*
+* The keys are derived from the slot and piece with a mixing function instead
+* of being stored in a table, so very large boards don't need a huge table and
+* every board of the same width gets the same keys.
+*/
+
+public class ZobristKeys {
+	private static final long SALT = 0x5A0B1E57C0FFEE11L;
+
+	private final int numCol;
+
+	public ZobristKeys(int numCol) {
+		this.numCol = numCol;
+	}
+
+	/**
+	* key
+	* Returns the key of the given piece (or EMPTY) at the given slot.
+	*/
+	public long key(int row, int col, int piece) {
+		long slot = (long)row * numCol + col;
+		return RefillSequence.mix(SALT + (slot << 8) + (piece + 1));
+	}
+
+	/**
+	* hash
+	* Returns the hash of the whole board.
+	*/
+	public long hash(int[][] board) {
+		long hash = 0;
+		for (int row = 0; row < board.length; row++) {
+			for (int col = 0; col < board[row].length; col++) {
+				hash ^= key(row, col, board[row][col]);
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+* VectorChainScanner.java
+* A ChainScanner that uses the Vector API to compare a whole strip of a row
+* against the same row shifted by one and two slots (for horizontal runs), or
+* against the next two rows (for vertical runs), many slots at a time, and
+* does the same for the patterns of pieces a swap turns into a run. On boards
+* narrower than one vector it is no faster than ScalarChainScanner.
+*
+* This file is kept apart from the rest of the game because it needs the
+* incubating jdk.incubator.vector module. Compile it after the other files with
+*
+*     javac --add-modules jdk.incubator.vector vector/VectorChainScanner.java
+*
+* and run the game with --add-modules jdk.incubator.vector to use it.
+*/
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorChainScanner extends ScalarChainScanner {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	public boolean hasChain(int[][] board) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		for (int row = 0; row < numRow; row++) {
+			int[] pieces = board[row];
+			for (int col = 0; col < numCol - 2; col += SPECIES.length()) {
+				if (horizontalRuns(pieces, col, numCol).anyTrue()) {
+					return true;
+				}
+			}
+		}
+		for (int row = 0; row + 2 < numRow; row++) {
+			for (int col = 0; col < numCol; col += SPECIES.length()) {
+				if (verticalRuns(board, row, col, numCol).anyTrue()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int markChains(int[][] board, int[][] marked) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		int count = 0;
+		for (int row = 0; row < numRow; row++) {
+			int[] pieces = board[row];
+			for (int col = 0; col < numCol - 2; col += SPECIES.length()) {
+				VectorMask<Integer> runs = horizontalRuns(pieces, col, numCol);
+				if (runs.anyTrue()) {
+					VectorMask<Integer> inRange = SPECIES.indexInRange(col, numCol - 2);
+					for (int k = 0; k < 3; k++) {
+						count += mark(marked[row], col + k, inRange, runs);
+					}
+				}
+			}
+		}
+		for (int row = 0; row + 2 < numRow; row++) {
+			for (int col = 0; col < numCol; col += SPECIES.length()) {
+				VectorMask<Integer> runs = verticalRuns(board, row, col, numCol);
+				if (runs.anyTrue()) {
+					VectorMask<Integer> inRange = SPECIES.indexInRange(col, numCol);
+					for (int k = 0; k < 3; k++) {
+						count += mark(marked[row + k], col, inRange, runs);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	public boolean hasPossibleMove(int[][] board) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		for (int[][] pattern : MOVE_PATTERNS) {
+			int[] rows = patternRange(pattern, 0, numRow);
+			int[] cols = patternRange(pattern, 1, numCol);
+			for (int row = rows[0]; row <= rows[1]; row++) {
+				int[] row0 = board[row + pattern[0][0]];
+				int[] row1 = board[row + pattern[1][0]];
+				int[] row2 = board[row + pattern[2][0]];
+				for (int col = cols[0]; col <= cols[1]; col += SPECIES.length()) {
+					VectorMask<Integer> inRange = SPECIES.indexInRange(col, cols[1] + 1);
+					IntVector a = IntVector.fromArray(SPECIES, row0, col + pattern[0][1], inRange);
+					IntVector b = IntVector.fromArray(SPECIES, row1, col + pattern[1][1], inRange);
+					IntVector c = IntVector.fromArray(SPECIES, row2, col + pattern[2][1], inRange);
+					if (matching(a, b, c).and(inRange).anyTrue()) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	public int markMoves(int[][] board, int[][] moves) {
+		int numRow = board.length;
+		int numCol = board[0].length;
+		int count = 0;
+		for (int[][] pattern : MOVE_PATTERNS) {
+			int[] rows = patternRange(pattern, 0, numRow);
+			int[] cols = patternRange(pattern, 1, numCol);
+			int[] swap = swapFlag(pattern);
+			for (int row = rows[0]; row <= rows[1]; row++) {
+				int[] row0 = board[row + pattern[0][0]];
+				int[] row1 = board[row + pattern[1][0]];
+				int[] row2 = board[row + pattern[2][0]];
+				int[] flags = moves[row + swap[0]];
+				int col = cols[0];
+				// whole vectors first, then the rest of the row with a mask
+				for (; col + SPECIES.length() <= cols[1] + 1; col += SPECIES.length()) {
+					IntVector a = IntVector.fromArray(SPECIES, row0, col + pattern[0][1]);
+					IntVector b = IntVector.fromArray(SPECIES, row1, col + pattern[1][1]);
+					IntVector c = IntVector.fromArray(SPECIES, row2, col + pattern[2][1]);
+					VectorMask<Integer> hits = matching(a, b, c);
+					if (hits.anyTrue()) {
+						IntVector old = IntVector.fromArray(SPECIES, flags, col + swap[1]);
+						count += hits.andNot(old.and(swap[2]).compare(VectorOperators.NE, 0)).trueCount();
+						old.lanewise(VectorOperators.OR, swap[2], hits).intoArray(flags, col + swap[1]);
+					}
+				}
+				if (col <= cols[1]) {
+					VectorMask<Integer> inRange = SPECIES.indexInRange(col, cols[1] + 1);
+					IntVector a = IntVector.fromArray(SPECIES, row0, col + pattern[0][1], inRange);
+					IntVector b = IntVector.fromArray(SPECIES, row1, col + pattern[1][1], inRange);
+					IntVector c = IntVector.fromArray(SPECIES, row2, col + pattern[2][1], inRange);
+					VectorMask<Integer> hits = matching(a, b, c).and(inRange);
+					if (hits.anyTrue()) {
+						IntVector old = IntVector.fromArray(SPECIES, flags, col + swap[1], inRange);
+						count += hits.andNot(old.and(swap[2]).compare(VectorOperators.NE, 0)).trueCount();
+						old.lanewise(VectorOperators.OR, swap[2], hits).intoArray(flags, col + swap[1], inRange);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	* horizontalRuns
+	* Returns the lanes i for which pieces[col + i] starts a horizontal run of three.
+	*/
+	private VectorMask<Integer> horizontalRuns(int[] pieces, int col, int numCol) {
+		VectorMask<Integer> inRange = SPECIES.indexInRange(col, numCol - 2);
+		IntVector a = IntVector.fromArray(SPECIES, pieces, col, inRange);
+		IntVector b = IntVector.fromArray(SPECIES, pieces, col + 1, inRange);
+		IntVector c = IntVector.fromArray(SPECIES, pieces, col + 2, inRange);
+		return matching(a, b, c).and(inRange);
+	}
+
+	/**
+	* verticalRuns
+	* Returns the lanes i for which board[row][col + i] starts a vertical run of three.
+	*/
+	private VectorMask<Integer> verticalRuns(int[][] board, int row, int col, int numCol) {
+		VectorMask<Integer> inRange = SPECIES.indexInRange(col, numCol);
+		IntVector a = IntVector.fromArray(SPECIES, board[row], col, inRange);
+		IntVector b = IntVector.fromArray(SPECIES, board[row + 1], col, inRange);
+		IntVector c = IntVector.fromArray(SPECIES, board[row + 2], col, inRange);
+		return matching(a, b, c).and(inRange);
+	}
+
+	/**
+	* matching
+	* Returns the lanes where all three vectors hold the same piece and it is not EMPTY.
+	*/
+	private static VectorMask<Integer> matching(IntVector a, IntVector b, IntVector c) {
+		return a.eq(b).and(a.eq(c)).and(a.compare(VectorOperators.NE, EMPTY));
+	}
+
+	/**
+	* mark
+	* Sets marked[col + i] to 1 for every lane i that is set in runs, and
+	* returns how many of them were 0 before.
+	*/
+	private static int mark(int[] marked, int col, VectorMask<Integer> inRange, VectorMask<Integer> runs) {
+		IntVector old = IntVector.fromArray(SPECIES, marked, col, inRange);
+		old.blend(1, runs).intoArray(marked, col, inRange);
+		return runs.andNot(old.compare(VectorOperators.NE, 0)).trueCount();
+	}
+}